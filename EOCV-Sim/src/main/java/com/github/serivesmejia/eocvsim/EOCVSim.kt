@@ -28,7 +28,10 @@ import com.github.serivesmejia.eocvsim.config.ConfigManager
 import com.github.serivesmejia.eocvsim.gui.DialogFactory
 import com.github.serivesmejia.eocvsim.gui.Visualizer
 import com.github.serivesmejia.eocvsim.gui.dialog.FileAlreadyExists
+import com.github.serivesmejia.eocvsim.headless.HeadlessRunner
 import com.github.serivesmejia.eocvsim.input.InputSourceManager
+import com.github.serivesmejia.eocvsim.output.RawCaptureSession
+import com.github.serivesmejia.eocvsim.output.TelemetryCaptureSession
 import com.github.serivesmejia.eocvsim.output.VideoRecordingSession
 import com.github.serivesmejia.eocvsim.pipeline.PipelineManager
 import com.github.serivesmejia.eocvsim.tuner.TunerManager
@@ -40,13 +43,20 @@ import com.github.serivesmejia.eocvsim.util.exception.MaxActiveContextsException
 import com.github.serivesmejia.eocvsim.util.exception.handling.EOCVSimUncaughtExceptionHandler
 import com.github.serivesmejia.eocvsim.util.extension.FileExt.plus
 import com.github.serivesmejia.eocvsim.util.fps.FpsLimiter
+import com.github.serivesmejia.eocvsim.util.profiler.StageProfiler
 import nu.pattern.OpenCV
 import org.opencv.core.Size
 import java.awt.Dimension
 import java.io.File
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
 import javax.swing.SwingUtilities
 import javax.swing.filechooser.FileFilter
 import javax.swing.filechooser.FileNameExtensionFilter
+import kotlin.system.exitProcess
 
 class EOCVSim(val params: Parameters = Parameters()) {
 
@@ -56,7 +66,9 @@ class EOCVSim(val params: Parameters = Parameters()) {
         const val DEFAULT_EOCV_HEIGHT = 240
         @JvmField val DEFAULT_EOCV_SIZE = Size(DEFAULT_EOCV_WIDTH.toDouble(), DEFAULT_EOCV_HEIGHT.toDouble())
 
-        private var alreadyInitializedOnce = false
+        private const val STARTUP_THREADS = 4
+
+        @Volatile private var alreadyInitializedOnce = false
     }
 
     @JvmField val onMainUpdate = EventHandler("OnMainUpdate")
@@ -72,11 +84,20 @@ class EOCVSim(val params: Parameters = Parameters()) {
         get() = configManager.config
 
     var currentRecordingSession: VideoRecordingSession? = null
+    var currentRawCaptureSession: RawCaptureSession? = null
+    var currentTelemetryCaptureSession: TelemetryCaptureSession? = null
+        private set
 
     val fpsLimiter = FpsLimiter(30.0)
 
+    //measures how long each stage of the main loop takes
+    @JvmField val profiler = StageProfiler()
+
     val eocvSimThread = Thread.currentThread()
 
+    val isHeadless: Boolean
+        get() = params.headless != null
+
     enum class DestroyReason {
         USER_REQUESTED, THEME_CHANGING, RESTART, CRASH
     }
@@ -87,29 +108,53 @@ class EOCVSim(val params: Parameters = Parameters()) {
 
         EOCVSimUncaughtExceptionHandler.register()
 
-        //loading native lib only once in the app runtime
-        if (!alreadyInitializedOnce) {
-            Log.info("EOCVSim", "Loading native lib...")
-            try {
-                OpenCV.loadLocally()
-                Log.info("EOCVSim", "Successfully loaded native lib")
-            } catch (ex: Throwable) {
-                Log.error("EOCVSim", "Failure loading native lib", ex)
-                Log.info("EOCVSim", "Retrying with old method...")
-                SysUtil.loadCvNativeLib()
+        val startTime = System.currentTimeMillis()
+
+        //startup is modeled as a small dependency graph, where
+        //the independent steps run at the same time in this pool
+        val startupThreadCount = AtomicInteger()
+        val startupExecutor = Executors.newFixedThreadPool(STARTUP_THREADS) { runnable ->
+            Thread(runnable, "EOCVSim-Startup-Thread-${startupThreadCount.incrementAndGet()}").apply {
+                isDaemon = true
             }
-            Log.blank()
         }
 
-        alreadyInitializedOnce = true
+        try {
+            val nativeLib = CompletableFuture.runAsync(Runnable { loadNativeLib() }, startupExecutor)
+            val config    = CompletableFuture.runAsync(Runnable { configManager.init() }, startupExecutor) //load config
 
-        configManager.init() //load config
+            //skip the whole gui and main loop if we were asked to run headlessly
+            params.headless?.let {
+                nativeLib.await()
+                config.await()
+                startupExecutor.shutdown()
 
-        visualizer.initAsync(configManager.config.simTheme) //create gui in the EDT
+                val succeeded = HeadlessRunner(this, it).run()
+                exitProcess(if(succeeded) 0 else 1)
+            }
+
+            //create gui in the EDT as soon as the config (theme) is
+            //loaded, the viewport needs the native lib for its mats
+            val gui = CompletableFuture.allOf(nativeLib, config).thenRun {
+                visualizer.initAsync(configManager.config.simTheme)
+            }
 
-        inputSourceManager.init() //loading user created input sources
-        pipelineManager.init() //init pipeline manager (scan for pipelines)
-        tunerManager.init() //init tunable variables manager
+            //loading user created input sources, decoding the default images needs the native lib
+            val inputSources = nativeLib.thenRunAsync(Runnable { inputSourceManager.init() }, startupExecutor)
+
+            //the pipelines classpath scan doesn't depend on anything else
+            val pipelines = CompletableFuture.runAsync(Runnable { pipelineManager.init() }, startupExecutor) //init pipeline manager (scan for pipelines)
+
+            //the tuner adds the fields of the current pipeline to the gui, so it waits for it to be fully built
+            val tuner = gui.thenRunAsync(Runnable {
+                visualizer.waitForFinishingInit()
+                tunerManager.init() //init tunable variables manager
+            }, startupExecutor)
+
+            CompletableFuture.allOf(gui, inputSources, pipelines, tuner).await()
+        } finally {
+            startupExecutor.shutdown()
+        }
 
         //shows a warning when a pipeline gets "stuck"
         pipelineManager.onPipelineTimeout.doPersistent {
@@ -119,6 +164,9 @@ class EOCVSim(val params: Parameters = Parameters()) {
 
         visualizer.waitForFinishingInit()
 
+        Log.info("EOCVSim", "Initialized in ${System.currentTimeMillis() - startTime} ms")
+        Log.blank()
+
         visualizer.sourceSelectorPanel.updateSourcesList() //update sources and pick first one
         visualizer.sourceSelectorPanel.sourceSelector.selectedIndex = 0
         visualizer.pipelineSelectorPanel.updatePipelinesList() //update pipelines and pick first one (DefaultPipeline)
@@ -127,6 +175,31 @@ class EOCVSim(val params: Parameters = Parameters()) {
         start()
     }
 
+    private fun loadNativeLib() {
+        //loading native lib only once in the app runtime
+        if (alreadyInitializedOnce) return
+
+        Log.info("EOCVSim", "Loading native lib...")
+        try {
+            OpenCV.loadLocally()
+            Log.info("EOCVSim", "Successfully loaded native lib")
+        } catch (ex: Throwable) {
+            Log.error("EOCVSim", "Failure loading native lib", ex)
+            Log.info("EOCVSim", "Retrying with old method...")
+            SysUtil.loadCvNativeLib()
+        }
+        Log.blank()
+
+        alreadyInitializedOnce = true
+    }
+
+    //waits for the startup step to finish, rethrowing its original exception if it failed
+    private fun <T> CompletableFuture<T>.await(): T = try {
+        join()
+    } catch(ex: CompletionException) {
+        throw ex.cause ?: ex
+    }
+
     private fun start() {
         Log.info("EOCVSim", "Begin EOCVSim loop")
         Log.blank()
@@ -138,15 +211,14 @@ class EOCVSim(val params: Parameters = Parameters()) {
 
         while(!eocvSimThread.isInterrupted) {
             //run all pending requested runnables
-            onMainUpdate.run()
+            profiler.measure(profiler.onMainUpdateStage) { onMainUpdate.run() }
 
             updateVisualizerTitle()
 
-            inputSourceManager.update(pipelineManager.paused)
-            tunerManager.update()
+            profiler.measure(profiler.inputSourceStage) { inputSourceManager.update(pipelineManager.paused) }
 
             try {
-                pipelineManager.update(inputSourceManager.lastMatFromSource)
+                profiler.measure(profiler.pipelineStage) { pipelineManager.update(inputSourceManager.lastMatFromSource) }
             } catch(ex: MaxActiveContextsException) { //handles when a lot of pipelines are stuck in the background
                 visualizer.asyncPleaseWaitDialog("There are many pipelines stuck in processFrame running in the background", "To avoid further issues, EOCV-Sim will exit now.",
                     "Ok", Dimension(430, 150), true, true
@@ -161,12 +233,12 @@ class EOCVSim(val params: Parameters = Parameters()) {
                 break
             }
 
-            //updating displayed telemetry
-            visualizer.telemetryPanel.updateTelemetry(pipelineManager.currentTelemetry)
+            //the tuner fields and the displayed telemetry are updated by
+            //the pipeline worker, between frames (see PipelineManager)
 
             //limit FPS
             fpsLimiter.maxFPS = configManager.config.maxFps.toDouble()
-            fpsLimiter.sync()
+            profiler.measure(profiler.fpsLimiterStage) { fpsLimiter.sync() }
         }
 
         Log.warn("EOCVSim", "Main thread interrupted (" + Integer.toHexString(hashCode()) + ")")
@@ -181,6 +253,11 @@ class EOCVSim(val params: Parameters = Parameters()) {
         currentRecordingSession?.stopRecordingSession()
         currentRecordingSession?.discardVideo()
 
+        stopRawCapture()
+        stopTelemetryCapture()
+
+        pipelineManager.fanOut.clear()
+
         Log.info("EOCVSim", "Trying to save config file...")
 
         configManager.saveToFile() //
@@ -203,6 +280,22 @@ class EOCVSim(val params: Parameters = Parameters()) {
         Thread({ EOCVSim().init() }, "main").start() //run next instance on a separate thread for the old one to get interrupted and ended
     }
 
+    /**
+     * Restarts only what is affected by the given reason, keeping this
+     * instance alive along with the native lib, the found pipelines and
+     * tunable fields, the opened input sources and the mat recyclers.
+     * Reasons which can't be handled this way fall back to a full restart.
+     */
+    fun warmRestart(reason: DestroyReason) {
+        when(reason) {
+            DestroyReason.THEME_CHANGING -> {
+                Log.info("EOCVSim", "Warm restarting due to $reason...")
+                visualizer.changeThemeAsync(config.simTheme)
+            }
+            else -> onMainUpdate.doOnce { restart() }
+        }
+    }
+
     fun startRecordingSession() {
         if(currentRecordingSession == null) {
             currentRecordingSession = VideoRecordingSession(fpsLimiter.maxFPS, configManager.config.videoRecordingSize)
@@ -264,16 +357,67 @@ class EOCVSim(val params: Parameters = Parameters()) {
         }
     }
 
+    fun startRawCapture(file: File) {
+        if(currentRawCaptureSession != null) return
+
+        currentRawCaptureSession = RawCaptureSession(file)
+        pipelineManager.pipelineInputPosters.add(currentRawCaptureSession!!.matPoster)
+
+        Log.info("EOCVSim", "Raw capture started, writing to ${file.absolutePath}")
+    }
+
+    fun stopRawCapture() {
+        currentRawCaptureSession?.let {
+            pipelineManager.pipelineInputPosters.remove(it.matPoster)
+            it.stop()
+        }
+
+        currentRawCaptureSession = null
+    }
+
+    fun startTelemetryCapture(file: File) {
+        if(currentTelemetryCaptureSession != null) return
+
+        val session = try {
+            TelemetryCaptureSession(file)
+        } catch(ex: IOException) {
+            Log.error("EOCVSim", "Unable to create telemetry capture file ${file.absolutePath}", ex)
+            return
+        }
+
+        currentTelemetryCaptureSession = session
+        pipelineManager.pipelineTelemetryListeners.add(session.telemetryListener)
+
+        Log.info("EOCVSim", "Telemetry capture started, writing to ${file.absolutePath}")
+    }
+
+    fun stopTelemetryCapture() {
+        currentTelemetryCaptureSession?.let {
+            pipelineManager.pipelineTelemetryListeners.remove(it.telemetryListener)
+            it.stop()
+        }
+
+        currentTelemetryCaptureSession = null
+    }
+
     fun isCurrentlyRecording() = currentRecordingSession?.isRecording ?: false
 
     private fun updateVisualizerTitle() {
         val pipelineFpsMsg = " (${pipelineManager.pipelineFpsCounter.fps} Pipeline FPS)"
-        val posterFpsMsg = " (${visualizer.viewport.matPoster.fpsCounter.fps} Poster FPS)"
+        val posterFpsMsg = " (${visualizer.viewport.matPoster.fpsCounter.fps} Poster FPS, ${visualizer.viewport.matPoster.droppedFrames} dropped)"
         val isPaused = if (pipelineManager.paused) " (Paused)" else ""
-        val isRecording = if (isCurrentlyRecording()) " RECORDING" else ""
+        val isRecording = currentRecordingSession?.let {
+            if (it.isRecording) " RECORDING (${it.writtenFrames} frames, ${it.droppedFrames} dropped)" else ""
+        } ?: ""
+        val isCapturing = currentRawCaptureSession?.let {
+            " CAPTURING (${it.writtenFrames} frames, ${it.droppedFrames} dropped)"
+        } ?: ""
+        val isCapturingTelemetry = currentTelemetryCaptureSession?.let {
+            " CAPTURING TELEMETRY (${it.writtenRecords} records, ${it.droppedFrames} dropped)"
+        } ?: ""
         val memoryMsg = " (${SysUtil.getMemoryUsageMB()} MB Java memory used)"
 
-        val msg = isRecording + pipelineFpsMsg + posterFpsMsg + isPaused + memoryMsg
+        val msg = isRecording + isCapturing + isCapturingTelemetry + pipelineFpsMsg + posterFpsMsg + isPaused + memoryMsg
 
         if (pipelineManager.currentPipeline == null) {
             visualizer.setTitleMessage("No pipeline$msg")
@@ -285,6 +429,9 @@ class EOCVSim(val params: Parameters = Parameters()) {
     class Parameters {
         var scanForPipelinesIn = "org.firstinspires"
         var scanForTunableFieldsIn = "com.github.serivesmejia"
+
+        //when not null, eocv sim runs in headless batch mode instead of opening the gui
+        var headless: HeadlessRunner.Parameters? = null
     }
 
 }
\ No newline at end of file
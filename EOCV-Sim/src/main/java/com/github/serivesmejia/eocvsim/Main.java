@@ -23,11 +23,14 @@
 
 package com.github.serivesmejia.eocvsim;
 
+import com.github.serivesmejia.eocvsim.headless.HeadlessRunner;
+
 public class Main {
 
     public static final EOCVSim eocvSim = new EOCVSim();
 
     public static void main(String[] args) {
+        eocvSim.getParams().setHeadless(HeadlessRunner.Parameters.fromArgs(args));
         eocvSim.init();
     }
 
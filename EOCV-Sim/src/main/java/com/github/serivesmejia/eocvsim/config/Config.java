@@ -40,6 +40,10 @@ public class Config {
     public volatile int maxFps = 30;
     public volatile boolean pauseOnImages = true;
 
+    //how many frames can be in flight between the source and the pipeline,
+    //1 runs every stage one after the other, as it was always done
+    public volatile int pipelineDepth = 1;
+
     public volatile Size videoRecordingSize = new Size(640, 480);
 
     public volatile TunableFieldPanelConfig.Config globalTunableFieldsConfig =
@@ -67,6 +67,12 @@ public class DialogFactory {
                     break;
                 case VIDEO:
                     new CreateVideoSource(eocvSim.visualizer.frame, eocvSim);
+                    break;
+                case IMAGE_SEQUENCE:
+                    new CreateImageSequenceSource(eocvSim.visualizer.frame, eocvSim);
+                    break;
+                case RAW_CAPTURE:
+                    new CreateRawCaptureSource(eocvSim.visualizer.frame, eocvSim);
             }
         });
     }
@@ -79,6 +85,10 @@ public class DialogFactory {
         invokeLater(() -> new Configuration(eocvSim.visualizer.frame, eocvSim));
     }
 
+    public static void createComparePipelinesDialog(EOCVSim eocvSim) {
+        invokeLater(() -> new ComparePipelines(eocvSim.visualizer.frame, eocvSim));
+    }
+
     public static void createAboutDialog(EOCVSim eocvSim) {
         invokeLater(() -> new About(eocvSim.visualizer.frame, eocvSim));
     }
@@ -34,6 +34,7 @@ import com.github.serivesmejia.eocvsim.gui.component.visualizer.TelemetryPanel;
 import com.github.serivesmejia.eocvsim.gui.component.visualizer.TopMenuBar;
 import com.github.serivesmejia.eocvsim.gui.theme.Theme;
 import com.github.serivesmejia.eocvsim.gui.util.GuiUtil;
+import com.github.serivesmejia.eocvsim.gui.util.SourcesListIconRenderer;
 import com.github.serivesmejia.eocvsim.util.Log;
 import org.firstinspires.ftc.robotcore.external.Telemetry;
 
@@ -112,13 +113,7 @@ public class Visualizer {
             }
         }
 
-        try {
-            theme.install();
-        } catch (Exception e) {
-            Log.error("Visualizer", "Failed to set theme " + theme.name(), e);
-        }
-
-        Icons.INSTANCE.setDark(FlatLaf.isLafDark());
+        installTheme(theme);
 
         //instantiate all swing elements after theme installation
         frame = new JFrame();
@@ -224,6 +219,45 @@ public class Visualizer {
         SwingUtilities.invokeLater(() -> init(simTheme));
     }
 
+    private void installTheme(Theme theme) {
+        try {
+            theme.install();
+        } catch (Exception e) {
+            Log.error("Visualizer", "Failed to set theme " + theme.name(), e);
+        }
+
+        Icons.INSTANCE.setDark(FlatLaf.isLafDark());
+    }
+
+    /**
+     * Installs the theme over the current gui instead of recreating it,
+     * so that everything shown (selections, tuner panels, the last frame
+     * in the viewport...) stays the same. Should be called in the EDT.
+     */
+    public void changeTheme(Theme theme) {
+        installTheme(theme);
+
+        for (Window window : Window.getWindows()) {
+            SwingUtilities.updateComponentTreeUI(window);
+        }
+
+        //the icons are inverted in dark themes, replace the components holding the old ones
+        sourceSelectorPanel.getSourceSelector().setCellRenderer(new SourcesListIconRenderer(eocvSim.inputSourceManager));
+
+        for (Component component : tunerMenuPanel.getComponents()) {
+            if (component instanceof TunableFieldPanel) {
+                ((TunableFieldPanel) component).panelOptions.updateTheme();
+            }
+        }
+
+        frame.revalidate();
+        frame.repaint();
+    }
+
+    public void changeThemeAsync(Theme theme) {
+        SwingUtilities.invokeLater(() -> changeTheme(theme));
+    }
+
     private void registerListeners() {
 
         frame.addWindowListener(new WindowAdapter() {
@@ -293,6 +327,10 @@ public class Visualizer {
 
     }
 
+    public boolean hasFinishedInitializing() {
+        return hasFinishedInitializing;
+    }
+
     public void waitForFinishingInit() {
         while (!hasFinishedInitializing) {
             Thread.yield();
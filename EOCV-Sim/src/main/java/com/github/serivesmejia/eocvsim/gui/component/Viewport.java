@@ -26,8 +26,6 @@ package com.github.serivesmejia.eocvsim.gui.component;
 import com.github.serivesmejia.eocvsim.EOCVSim;
 import com.github.serivesmejia.eocvsim.config.Config;
 import com.github.serivesmejia.eocvsim.gui.util.MatPoster;
-import com.github.serivesmejia.eocvsim.util.image.DynamicBufferedImageRecycler;
-import com.github.serivesmejia.eocvsim.util.CvUtil;
 import com.github.serivesmejia.eocvsim.util.Log;
 import com.qualcomm.robotcore.util.Range;
 import org.opencv.core.Mat;
@@ -36,21 +34,15 @@ import org.opencv.imgproc.Imgproc;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 
 public class Viewport extends JPanel {
 
-    public final ImageX image = new ImageX();
+    public final ViewportImage image = new ViewportImage();
     public final MatPoster matPoster;
 
     private Mat lastVisualizedMat = null;
     private Mat lastVisualizedScaledMat = null;
 
-    private final DynamicBufferedImageRecycler buffImgGiver = new DynamicBufferedImageRecycler();
-
-    private volatile BufferedImage lastBuffImage;
-    private volatile Dimension lastDimension;
-
     private double scale;
 
     private final EOCVSim eocvSim;
@@ -64,6 +56,8 @@ public class Viewport extends JPanel {
         add(image, new GridBagConstraints());
 
         matPoster = new MatPoster("Viewport", maxQueueItems);
+        //frames which arrive faster than the screen refreshes would never be seen
+        matPoster.setMaxPostRate(ViewportImage.getDisplayRefreshRate());
         attachToPoster(matPoster);
     }
 
@@ -88,34 +82,29 @@ public class Viewport extends JPanel {
         Size size = new Size(mat.width() * finalScale, mat.height() * finalScale);
         Imgproc.resize(mat, lastVisualizedScaledMat, size, 0.0, 0.0, Imgproc.INTER_AREA); //resize mat to lastVisualizedScaledMat
 
-        Dimension newDimension = new Dimension(lastVisualizedScaledMat.width(), lastVisualizedScaledMat.height());
-
-        if(lastBuffImage != null) buffImgGiver.returnBufferedImage(lastBuffImage);
-
-        lastBuffImage = buffImgGiver.giveBufferedImage(newDimension, 2);
-        lastDimension = newDimension;
-
-        CvUtil.matToBufferedImage(lastVisualizedScaledMat, lastBuffImage);
-
-        image.setImage(lastBuffImage); //set buff image to ImageX component
+        image.setImageMat(lastVisualizedScaledMat); //copy into the image's back buffer, repainted on the next refresh
 
         Config config = eocvSim.configManager.getConfig();
         if (config.storeZoom) config.zoom = scale; //store latest scale if store setting turned on
     }
 
     public void attachToPoster(MatPoster poster) {
+        Mat bgrMat = new Mat();
+
+        //convert into our own mat instead of the given one,
+        //so that the poster doesn't need to make us a copy
         poster.addPostable((m) -> {
             try {
-                Imgproc.cvtColor(m, m, Imgproc.COLOR_RGB2BGR);
-                postMat(m);
+                Imgproc.cvtColor(m, bgrMat, Imgproc.COLOR_RGB2BGR);
+                postMat(bgrMat);
             } catch(Exception ex) {
                 Log.error("Viewport-Postable", "Couldn't visualize last mat", ex);
             }
-        });
+        }, true);
     }
 
     public void flush() {
-        buffImgGiver.flushAll();
+        image.flush();
     }
 
     public void stop() {
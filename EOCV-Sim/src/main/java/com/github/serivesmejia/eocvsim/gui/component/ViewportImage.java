@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.gui.component;
+
+import com.github.serivesmejia.eocvsim.util.CvUtil;
+import org.opencv.core.Mat;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Component which paints the frames of a viewport. Frames are copied
+ * into a back buffer which gets swapped with the painted front buffer,
+ * and repaints are coalesced to happen at most once per display refresh
+ */
+public class ViewportImage extends JComponent {
+
+    public static final int FALLBACK_REFRESH_RATE = 60;
+
+    private final Object bufferLock = new Object();
+
+    private BufferedImage frontBuffer = null;
+    private BufferedImage backBuffer = null;
+
+    private volatile boolean dirty = false;
+
+    private final Timer repaintTimer;
+
+    public ViewportImage() {
+        repaintTimer = new Timer(1000 / getDisplayRefreshRate(), (e) -> {
+            if(dirty) {
+                dirty = false;
+                repaint();
+            }
+        });
+        repaintTimer.setCoalesce(true);
+    }
+
+    /**
+     * Copies the given mat into the back buffer and swaps it with the
+     * front one, buffers are only reallocated when the mat size changes.
+     * Can be called from any thread, but not from more than one at a time
+     */
+    public void setImageMat(Mat mat) {
+        BufferedImage buffer;
+
+        synchronized(bufferLock) {
+            if(!matches(backBuffer, mat)) {
+                backBuffer = new BufferedImage(mat.width(), mat.height(), bufferedImageType(mat));
+            }
+            buffer = backBuffer;
+        }
+
+        //the front buffer is the only one being painted
+        //so the copy can be done outside of the lock
+        CvUtil.matToBufferedImage(mat, buffer);
+
+        boolean resized;
+
+        synchronized(bufferLock) {
+            resized = frontBuffer == null || frontBuffer.getWidth() != buffer.getWidth()
+                    || frontBuffer.getHeight() != buffer.getHeight();
+
+            backBuffer = frontBuffer;
+            frontBuffer = buffer;
+        }
+
+        if(resized) SwingUtilities.invokeLater(this::revalidate);
+
+        dirty = true;
+    }
+
+    public BufferedImage getImage() {
+        synchronized(bufferLock) {
+            return frontBuffer;
+        }
+    }
+
+    public void flush() {
+        synchronized(bufferLock) {
+            if(backBuffer != null) backBuffer.flush();
+            backBuffer = null;
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+
+        synchronized(bufferLock) {
+            if(frontBuffer != null) g.drawImage(frontBuffer, 0, 0, null);
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        synchronized(bufferLock) {
+            if(frontBuffer != null) return new Dimension(frontBuffer.getWidth(), frontBuffer.getHeight());
+        }
+        return super.getPreferredSize();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        repaintTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        repaintTimer.stop();
+        super.removeNotify();
+    }
+
+    private static boolean matches(BufferedImage buffer, Mat mat) {
+        return buffer != null && buffer.getWidth() == mat.width() && buffer.getHeight() == mat.height()
+                && buffer.getType() == bufferedImageType(mat);
+    }
+
+    private static int bufferedImageType(Mat mat) {
+        return mat.channels() > 1 ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_BYTE_GRAY;
+    }
+
+    public static int getDisplayRefreshRate() {
+        if(GraphicsEnvironment.isHeadless()) return FALLBACK_REFRESH_RATE;
+
+        int refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+
+        return refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN ? FALLBACK_REFRESH_RATE : refreshRate;
+    }
+
+}
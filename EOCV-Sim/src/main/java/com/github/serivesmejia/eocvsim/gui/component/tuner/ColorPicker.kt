@@ -24,8 +24,8 @@
 package com.github.serivesmejia.eocvsim.gui.component.tuner
 
 import com.github.serivesmejia.eocvsim.gui.Icons
-import com.github.serivesmejia.eocvsim.gui.component.ImageX
 import com.github.serivesmejia.eocvsim.gui.component.Viewport
+import com.github.serivesmejia.eocvsim.gui.component.ViewportImage
 import com.github.serivesmejia.eocvsim.util.event.EventHandler
 import org.opencv.core.Scalar
 import java.awt.Color
@@ -35,7 +35,7 @@ import java.awt.event.MouseAdapter
 import java.awt.event.MouseEvent
 import java.awt.Toolkit
 
-class ColorPicker(private val imageX: ImageX) {
+class ColorPicker(private val viewportImage: ViewportImage) {
 
     companion object {
         val colorPickIco = Icons.getImageResized("ico_colorpick_pointer", 200, 200).image
@@ -61,7 +61,15 @@ class ColorPicker(private val imageX: ImageX) {
             //if clicked with primary button...
             if(e.button == MouseEvent.BUTTON1) {
                 //get the "packed" (in a single int value) color from the image at mouse position's pixel
-                val packedColor = imageX.image.getRGB(e.x, e.y)
+                val image = viewportImage.image
+
+                if(image == null || e.x >= image.width || e.y >= image.height) {
+                    onCancel.run()
+                    stopPicking()
+                    return
+                }
+
+                val packedColor = image.getRGB(e.x, e.y)
                 //parse the "packed" color into four separate channels
                 val color = Color(packedColor, true)
 
@@ -83,10 +91,10 @@ class ColorPicker(private val imageX: ImageX) {
         isPicking = true
         hasPicked = false
 
-        imageX.addMouseListener(clickListener)
+        viewportImage.addMouseListener(clickListener)
 
-        initialCursor = imageX.cursor
-        imageX.cursor = colorPickCursor
+        initialCursor = viewportImage.cursor
+        viewportImage.cursor = colorPickCursor
     }
 
     fun stopPicking() {
@@ -98,8 +106,8 @@ class ColorPicker(private val imageX: ImageX) {
             onCancel.run()
         }
 
-        imageX.removeMouseListener(clickListener)
-        imageX.cursor = initialCursor
+        viewportImage.removeMouseListener(clickListener)
+        viewportImage.cursor = initialCursor
     }
 
 }
\ No newline at end of file
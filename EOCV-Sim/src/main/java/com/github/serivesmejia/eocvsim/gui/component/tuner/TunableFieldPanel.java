@@ -49,7 +49,7 @@ public class TunableFieldPanel extends JPanel {
     private final EOCVSim eocvSim;
 
     private Mode mode;
-    private boolean reevalConfigRequested = false;
+    private volatile boolean reevalConfigRequested = false;
 
     private boolean hasBeenShown = false;
 
@@ -39,10 +39,10 @@ import javax.swing.event.AncestorListener
 class TunableFieldPanelOptions(val fieldPanel: TunableFieldPanel,
                                eocvSim: EOCVSim) : JPanel() {
 
-    private val sliderIco    = Icons.getImageResized("ico_slider", 15, 15)
-    private val textBoxIco   = Icons.getImageResized("ico_textbox", 15, 15)
-    private val configIco    = Icons.getImageResized("ico_config", 15, 15)
-    private val colorPickIco = Icons.getImageResized("ico_colorpick", 15, 15)
+    private var sliderIco    = Icons.getImageResized("ico_slider", 15, 15)
+    private var textBoxIco   = Icons.getImageResized("ico_textbox", 15, 15)
+    private var configIco    = Icons.getImageResized("ico_config", 15, 15)
+    private var colorPickIco = Icons.getImageResized("ico_colorpick", 15, 15)
 
     private val textBoxSliderToggle   = JToggleButton()
     private val configButton          = JButton()
@@ -184,6 +184,24 @@ class TunableFieldPanelOptions(val fieldPanel: TunableFieldPanel,
         }
     }
 
+    //reloads the icons, which are inverted in dark themes, after the theme was changed.
+    //the config panel isn't part of any window until its popup is shown, so update it here
+    fun updateTheme() {
+        val wasSliderIco = textBoxSliderToggle.icon === sliderIco
+
+        sliderIco    = Icons.getImageResized("ico_slider", 15, 15)
+        textBoxIco   = Icons.getImageResized("ico_textbox", 15, 15)
+        configIco    = Icons.getImageResized("ico_config", 15, 15)
+        colorPickIco = Icons.getImageResized("ico_colorpick", 15, 15)
+
+        textBoxSliderToggle.icon = if(wasSliderIco) sliderIco else textBoxIco
+        configButton.icon        = configIco
+        colorPickButton.icon     = colorPickIco
+
+        SwingUtilities.updateComponentTreeUI(configPanel)
+        revalAndRepaint()
+    }
+
     private fun revalAndRepaint() {
         textBoxSliderToggle.revalidate()
         textBoxSliderToggle.repaint()
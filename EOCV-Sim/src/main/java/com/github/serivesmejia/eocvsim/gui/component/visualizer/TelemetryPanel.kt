@@ -12,13 +12,26 @@ import java.awt.FlowLayout
 import java.awt.GridLayout
 import java.awt.event.MouseEvent
 import java.awt.event.MouseMotionListener
+import java.util.concurrent.atomic.AtomicReference
 import javax.swing.*
 
 class TelemetryPanel : JPanel(FlowLayout(FlowLayout.CENTER)) {
 
+    companion object {
+        //shown when there's no telemetry, so that the list keeps its height
+        private const val EMPTY_LINE = "<html></html>"
+    }
+
     val telemetryScroll = JScrollPane()
     val telemetryList  = JList<String>()
 
+    //the same model is kept and only the lines which changed are replaced
+    private val telemetryModel = DefaultListModel<String>()
+
+    //the latest telemetry text which hasn't been shown yet, replaced
+    //if the telemetry changes again before the swing thread gets to it
+    private val pendingTelemetryText = AtomicReference<String?>(null)
+
     init {
         /*
          * TELEMETRY
@@ -31,6 +44,11 @@ class TelemetryPanel : JPanel(FlowLayout(FlowLayout.CENTER)) {
 
         add(telemetryLabel)
 
+        telemetryModel.addElement(EMPTY_LINE)
+
+        telemetryList.model = telemetryModel
+        telemetryList.fixedCellWidth = 240
+
         telemetryScroll.setViewportView(telemetryList)
         telemetryScroll.verticalScrollBarPolicy = JScrollPane.VERTICAL_SCROLLBAR_ALWAYS
         telemetryScroll.horizontalScrollBarPolicy = JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS
@@ -66,29 +84,44 @@ class TelemetryPanel : JPanel(FlowLayout(FlowLayout.CENTER)) {
         telemetryScroll.repaint()
     }
 
+    /**
+     * Shows the given telemetry if it changed since the last call, can be
+     * called from any thread. The list is updated later from the swing thread,
+     * replacing only the lines which changed, and the list model events take
+     * care of repainting the affected rows.
+     */
     fun updateTelemetry(telemetry: Telemetry?) {
-        var telemetryText: String? = null
+        if (telemetry == null || !telemetry.hasChanged()) return
 
-        if (telemetry != null && telemetry.hasChanged()) {
-            telemetryText = telemetry.toString()
+        //only schedule if there wasn't a pending update already,
+        //otherwise the scheduled one will pick up the new text
+        if (pendingTelemetryText.getAndSet(telemetry.toString()) == null) {
+            SwingUtilities.invokeLater { applyPendingTelemetry() }
+        }
+    }
 
-            val listModel = DefaultListModel<String>()
-            for (line in telemetryText.split("\n").toTypedArray()) {
-                    listModel.addElement(line)
-            }
+    private fun applyPendingTelemetry() {
+        val telemetryText = pendingTelemetryText.getAndSet(null) ?: return
 
-            telemetryList.fixedCellWidth = 240
-            telemetryList.model = listModel
-        }
+        val lines = if (telemetryText.isBlank()) {
+            listOf(EMPTY_LINE)
+        } else telemetryText.split("\n")
 
-        if (telemetryList.model.size <= 0 || (telemetryText != null && telemetryText.trim { it <= ' ' } == "")) {
-            val listModel = DefaultListModel<String>()
+        val commonSize = minOf(lines.size, telemetryModel.size())
 
-            listModel.addElement("<html></html>")
-            telemetryList.model = listModel
+        for (i in 0 until commonSize) {
+            if (telemetryModel.getElementAt(i) != lines[i]) {
+                telemetryModel.set(i, lines[i])
+            }
         }
 
-        revalAndRepaint()
+        if (lines.size > telemetryModel.size()) {
+            for (i in commonSize until lines.size) {
+                telemetryModel.addElement(lines[i])
+            }
+        } else if (lines.size < telemetryModel.size()) {
+            telemetryModel.removeRange(lines.size, telemetryModel.size() - 1)
+        }
     }
 
 }
\ No newline at end of file
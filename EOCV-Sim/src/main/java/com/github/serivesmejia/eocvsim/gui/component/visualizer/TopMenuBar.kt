@@ -33,6 +33,8 @@ import java.awt.event.ActionEvent
 import javax.swing.JMenu
 import javax.swing.JMenuBar
 import javax.swing.JMenuItem
+import javax.swing.event.MenuEvent
+import javax.swing.event.MenuListener
 
 class TopMenuBar(visualizer: Visualizer, eocvSim: EOCVSim) : JMenuBar() {
 
@@ -72,6 +74,61 @@ class TopMenuBar(visualizer: Visualizer, eocvSim: EOCVSim) : JMenuBar() {
 
         mFileMenu.add(fileSaveMatItem)
 
+        val fileComparePipelinesItem = JMenuItem("Compare pipelines")
+
+        fileComparePipelinesItem.addActionListener {
+            DialogFactory.createComparePipelinesDialog(eocvSim)
+        }
+
+        mFileMenu.add(fileComparePipelinesItem)
+
+        val fileExportProfilerItem = JMenuItem("Export profiler data")
+
+        fileExportProfilerItem.addActionListener {
+            GuiUtil.saveProfilerFileChooser(visualizer.frame, eocvSim)
+        }
+
+        mFileMenu.add(fileExportProfilerItem)
+
+        val fileRawCaptureItem = JMenuItem("Start raw input capture")
+
+        fileRawCaptureItem.addActionListener {
+            if(eocvSim.currentRawCaptureSession == null) {
+                GuiUtil.rawCaptureFileChooser(visualizer.frame, eocvSim)
+            } else {
+                eocvSim.onMainUpdate.doOnce { eocvSim.stopRawCapture() }
+            }
+        }
+
+        val fileTelemetryCaptureItem = JMenuItem("Start telemetry capture")
+
+        fileTelemetryCaptureItem.addActionListener {
+            if(eocvSim.currentTelemetryCaptureSession == null) {
+                GuiUtil.telemetryCaptureFileChooser(visualizer.frame, eocvSim)
+            } else {
+                eocvSim.onMainUpdate.doOnce { eocvSim.stopTelemetryCapture() }
+            }
+        }
+
+        //the item texts depend on whether there's a capture going on
+        mFileMenu.addMenuListener(object: MenuListener {
+            override fun menuSelected(e: MenuEvent?) {
+                fileRawCaptureItem.text = if(eocvSim.currentRawCaptureSession == null) {
+                    "Start raw input capture"
+                } else "Stop raw input capture"
+
+                fileTelemetryCaptureItem.text = if(eocvSim.currentTelemetryCaptureSession == null) {
+                    "Start telemetry capture"
+                } else "Stop telemetry capture"
+            }
+
+            override fun menuDeselected(e: MenuEvent?) {}
+            override fun menuCanceled(e: MenuEvent?) {}
+        })
+
+        mFileMenu.add(fileRawCaptureItem)
+        mFileMenu.add(fileTelemetryCaptureItem)
+
         mFileMenu.addSeparator()
 
         val fileRestart = JMenuItem("Restart")
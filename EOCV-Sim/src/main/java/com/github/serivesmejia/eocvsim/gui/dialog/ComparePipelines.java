@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.gui.dialog;
+
+import com.github.serivesmejia.eocvsim.EOCVSim;
+import com.github.serivesmejia.eocvsim.gui.component.Viewport;
+import com.github.serivesmejia.eocvsim.pipeline.LazyPipelineClass;
+import com.github.serivesmejia.eocvsim.pipeline.PipelineFanOut;
+import com.github.serivesmejia.eocvsim.util.Log;
+import org.openftc.easyopencv.OpenCvPipeline;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+
+public class ComparePipelines {
+
+    public JDialog comparePipelines = null;
+
+    private final EOCVSim eocvSim;
+
+    public ComparePipelines(JFrame parent, EOCVSim eocvSim) {
+
+        comparePipelines = new JDialog(parent);
+
+        this.eocvSim = eocvSim;
+
+        eocvSim.visualizer.childDialogs.add(comparePipelines);
+        initComparePipelines();
+
+    }
+
+    private void initComparePipelines() {
+
+        comparePipelines.setModal(true);
+
+        comparePipelines.setTitle("Compare pipelines");
+        comparePipelines.setSize(330, 300);
+
+        JPanel contentsPane = new JPanel(new BorderLayout());
+
+        JLabel infoLabel = new JLabel("Select the pipelines to run alongside the current one", JLabel.CENTER);
+        contentsPane.add(infoLabel, BorderLayout.NORTH);
+
+        ArrayList<LazyPipelineClass> pipelines = eocvSim.pipelineManager.getPipelines();
+
+        DefaultListModel<String> listModel = new DefaultListModel<>();
+        for (LazyPipelineClass pipelineClass : pipelines) {
+            listModel.addElement(pipelineClass.getSimpleName());
+        }
+
+        JList<String> pipelinesList = new JList<>(listModel);
+        pipelinesList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+
+        JScrollPane pipelinesListScroll = new JScrollPane(pipelinesList);
+        pipelinesListScroll.setBorder(BorderFactory.createEmptyBorder(10, 0, 10, 0));
+        contentsPane.add(pipelinesListScroll, BorderLayout.CENTER);
+
+        JPanel buttonsPanel = new JPanel(new FlowLayout());
+
+        JButton compareButton = new JButton("Compare");
+        buttonsPanel.add(compareButton);
+
+        JButton cancelButton = new JButton("Cancel");
+        buttonsPanel.add(cancelButton);
+
+        contentsPane.add(buttonsPanel, BorderLayout.SOUTH);
+        contentsPane.setBorder(BorderFactory.createEmptyBorder(15, 15, 10, 15));
+
+        comparePipelines.getContentPane().add(contentsPane, BorderLayout.CENTER);
+
+        cancelButton.addActionListener(e -> close());
+
+        compareButton.addActionListener(e -> {
+            close();
+
+            for (int index : pipelinesList.getSelectedIndices()) {
+                LazyPipelineClass pipelineClass = pipelines.get(index);
+
+                try {
+                    openComparisonFrame(pipelineClass.load());
+                } catch (ClassNotFoundException | ClassCastException | LinkageError ex) {
+                    Log.error("ComparePipelines", "Unable to load pipeline class " + pipelineClass.getName(), ex);
+                }
+            }
+        });
+
+        comparePipelines.setResizable(false);
+        comparePipelines.setLocationRelativeTo(null);
+        comparePipelines.setVisible(true);
+
+    }
+
+    private void openComparisonFrame(Class<? extends OpenCvPipeline> pipelineClass) {
+        JFrame frame = new JFrame(pipelineClass.getSimpleName() + " - Comparison");
+        frame.setSize(640, 540);
+        frame.setLayout(new BorderLayout());
+
+        Viewport viewport = new Viewport(eocvSim, 10);
+        frame.add(new JScrollPane(viewport), BorderLayout.CENTER);
+
+        JTextArea telemetryArea = new JTextArea(4, 0);
+        telemetryArea.setEditable(false);
+        frame.add(new JScrollPane(telemetryArea), BorderLayout.SOUTH);
+
+        frame.setLocationByPlatform(true);
+        frame.setVisible(true);
+
+        //the viewport needs to be in a visible window before receiving any frame
+        PipelineFanOut.Entry entry = eocvSim.pipelineManager.fanOut.add(pipelineClass, viewport.matPoster);
+
+        if (entry == null) {
+            viewport.stop();
+            frame.dispose();
+            return;
+        }
+
+        viewport.matPoster.addPostable((m) -> {
+            String telemetry = entry.getTelemetry().toString();
+            SwingUtilities.invokeLater(() -> telemetryArea.setText(telemetry));
+        }, true);
+
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                eocvSim.pipelineManager.fanOut.remove(entry);
+                viewport.stop();
+            }
+        });
+
+        //close the frame if the pipeline gets removed for timing out
+        entry.onRemoved.doOnce(() -> SwingUtilities.invokeLater(frame::dispose));
+
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        eocvSim.visualizer.childFrames.add(frame);
+    }
+
+    public void close() {
+        comparePipelines.setVisible(false);
+        comparePipelines.dispose();
+    }
+
+}
@@ -27,6 +27,7 @@ import com.github.serivesmejia.eocvsim.EOCVSim;
 import com.github.serivesmejia.eocvsim.config.Config;
 import com.github.serivesmejia.eocvsim.gui.component.input.SizeFields;
 import com.github.serivesmejia.eocvsim.gui.theme.Theme;
+import com.github.serivesmejia.eocvsim.pipeline.PipelineManager;
 import org.opencv.core.Size;
 
 import javax.swing.*;
@@ -35,7 +36,7 @@ import java.awt.*;
 public class Configuration {
 
     private final EOCVSim eocvSim;
-    public JPanel contents = new JPanel(new GridLayout(5, 1));
+    public JPanel contents = new JPanel(new GridLayout(6, 1));
     public JComboBox<String> themeComboBox = new JComboBox<>();
 
     public JButton acceptButton = new JButton("Accept");
@@ -43,6 +44,8 @@ public class Configuration {
     public JCheckBox storeZoomCheckBox = new JCheckBox();
     public JCheckBox pauseOnImageCheckBox = new JCheckBox();
 
+    public JSpinner pipelineDepthSpinner = null;
+
     public SizeFields videoRecordingSize = null;
 
     JDialog configuration;
@@ -63,7 +66,7 @@ public class Configuration {
         configuration.setModal(true);
 
         configuration.setTitle("Settings");
-        configuration.setSize(350, 240);
+        configuration.setSize(350, 280);
 
         //theme selection
         JPanel themePanel = new JPanel(new FlowLayout());
@@ -106,6 +109,21 @@ public class Configuration {
 
         contents.add(pauseOnImagePanel);
 
+        //pipeline depth option
+        JPanel pipelineDepthPanel = new JPanel(new FlowLayout());
+        JLabel pipelineDepthLabel = new JLabel("Pipeline depth: ");
+
+        pipelineDepthSpinner = new JSpinner(new SpinnerNumberModel(
+                Math.max(1, Math.min(PipelineManager.MAX_PIPELINE_DEPTH, config.pipelineDepth)),
+                1, PipelineManager.MAX_PIPELINE_DEPTH, 1
+        ));
+        pipelineDepthSpinner.setToolTipText("Frames read from the source while the pipeline is still processing (1 to disable)");
+
+        pipelineDepthPanel.add(pipelineDepthLabel);
+        pipelineDepthPanel.add(pipelineDepthSpinner);
+
+        contents.add(pipelineDepthPanel);
+
         videoRecordingSize = new SizeFields(config.videoRecordingSize, false, "Video Rec. Size: ");
 
         videoRecordingSize.onChange.doPersistent(() -> {
@@ -146,12 +164,13 @@ public class Configuration {
         config.simTheme = userSelectedTheme;
         config.storeZoom = storeZoomCheckBox.isSelected();
         config.pauseOnImages = pauseOnImageCheckBox.isSelected();
+        config.pipelineDepth = (int) pipelineDepthSpinner.getValue();
         config.videoRecordingSize = videoRecordingSize.getCurrentSize();
 
         eocvSim.configManager.saveToFile(); //update config file
 
         if (userSelectedTheme != beforeTheme)
-            eocvSim.restart();
+            eocvSim.warmRestart(EOCVSim.DestroyReason.THEME_CHANGING); //only the gui needs to change
 
     }
 
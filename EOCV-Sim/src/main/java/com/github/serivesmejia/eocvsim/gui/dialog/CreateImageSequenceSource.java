@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.gui.dialog;
+
+import com.github.serivesmejia.eocvsim.EOCVSim;
+import com.github.serivesmejia.eocvsim.gui.DialogFactory;
+import com.github.serivesmejia.eocvsim.gui.component.input.EnumComboBox;
+import com.github.serivesmejia.eocvsim.gui.component.input.FileSelector;
+import com.github.serivesmejia.eocvsim.gui.component.input.SizeFields;
+import com.github.serivesmejia.eocvsim.input.source.ImageSequenceSource;
+import com.github.serivesmejia.eocvsim.util.CvUtil;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.io.File;
+
+public class CreateImageSequenceSource {
+
+    public JDialog createImageSequenceSource = null;
+
+    public JTextField nameTextField = null;
+
+    public FileSelector dirSelector = null;
+
+    public SizeFields sizeFieldsInput = null;
+
+    public EnumComboBox<ImageSequenceSource.PlaybackMode> modeComboBox = null;
+    public JSpinner fpsSpinner = null;
+    public JCheckBox loopCheckBox = null;
+
+    public JButton createButton = null;
+    public boolean selectedValidDir = false;
+
+    private EOCVSim eocvSim = null;
+
+    public CreateImageSequenceSource(JFrame parent, EOCVSim eocvSim) {
+
+        createImageSequenceSource = new JDialog(parent);
+        this.eocvSim = eocvSim;
+
+        eocvSim.visualizer.childDialogs.add(createImageSequenceSource);
+
+        initCreateImageSequenceSource();
+
+    }
+
+    public void initCreateImageSequenceSource() {
+
+        createImageSequenceSource.setModal(true);
+
+        createImageSequenceSource.setTitle("Create image sequence source");
+        createImageSequenceSource.setSize(370, 280);
+
+        JPanel contentsPanel = new JPanel(new GridLayout(6, 1));
+
+        //directory select
+        dirSelector = new FileSelector(18, DialogFactory.FileChooser.Mode.DIRECTORY_SELECT);
+
+        dirSelector.onFileSelect.doPersistent(() ->
+                dirSelected(dirSelector.getLastSelectedFile())
+        );
+
+        contentsPanel.add(dirSelector);
+
+        // Size part
+
+        sizeFieldsInput = new SizeFields();
+        sizeFieldsInput.onChange.doPersistent(this::updateCreateBtt);
+
+        contentsPanel.add(sizeFieldsInput);
+
+        contentsPanel.setBorder(BorderFactory.createEmptyBorder(15, 0, 0, 0));
+
+        // Playback part
+
+        modeComboBox = new EnumComboBox<>("Playback: ", ImageSequenceSource.PlaybackMode.class, ImageSequenceSource.PlaybackMode.values());
+        modeComboBox.getOnSelect().doPersistent(this::updateFpsSpinner);
+
+        contentsPanel.add(modeComboBox);
+
+        JPanel fpsPanel = new JPanel(new FlowLayout());
+
+        fpsSpinner = new JSpinner(new SpinnerNumberModel(30, 1, 240, 1));
+        loopCheckBox = new JCheckBox("Loop", true);
+
+        fpsPanel.add(new JLabel("FPS: "));
+        fpsPanel.add(fpsSpinner);
+        fpsPanel.add(loopCheckBox);
+
+        contentsPanel.add(fpsPanel);
+
+        updateFpsSpinner();
+
+        //Name part
+
+        JPanel namePanel = new JPanel(new FlowLayout());
+
+        JLabel nameLabel = new JLabel("Source name: ");
+        nameLabel.setHorizontalAlignment(JLabel.LEFT);
+
+        nameTextField = new JTextField("ImageSequenceSource-" + (eocvSim.inputSourceManager.sources.size() + 1), 15);
+
+        namePanel.add(nameLabel);
+        namePanel.add(nameTextField);
+
+        contentsPanel.add(namePanel);
+
+        // Bottom buttons
+        JPanel buttonsPanel = new JPanel(new FlowLayout());
+        createButton = new JButton("Create");
+        createButton.setEnabled(selectedValidDir);
+
+        buttonsPanel.add(createButton);
+
+        JButton cancelButton = new JButton("Cancel");
+        buttonsPanel.add(cancelButton);
+
+        contentsPanel.add(buttonsPanel);
+
+        //Add contents
+        createImageSequenceSource.getContentPane().add(contentsPanel, BorderLayout.CENTER);
+
+        nameTextField.getDocument().addDocumentListener(new DocumentListener() {
+            public void changedUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            public void insertUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            public void changed() {
+                updateCreateBtt();
+            }
+        });
+
+        createButton.addActionListener(e -> {
+            createSource(
+                    nameTextField.getText(), dirSelector.getLastSelectedFile().getAbsolutePath(),
+                    sizeFieldsInput.getCurrentSize(), modeComboBox.getSelectedEnum(),
+                    (int) fpsSpinner.getValue(), loopCheckBox.isSelected()
+            );
+            close();
+        });
+
+        cancelButton.addActionListener(e -> close());
+
+        createImageSequenceSource.setResizable(false);
+        createImageSequenceSource.setLocationRelativeTo(null);
+        createImageSequenceSource.setVisible(true);
+
+    }
+
+    public void dirSelected(File f) {
+
+        File[] images = ImageSequenceSource.listImageFiles(f.getAbsolutePath());
+        Mat firstImage = images.length > 0 ? Imgcodecs.imread(images[0].getAbsolutePath()) : null;
+
+        if (firstImage != null && !firstImage.empty()) {
+
+            String dirName = f.getName();
+            if(!dirName.trim().equals("") && !eocvSim.inputSourceManager.isNameOnUse(dirName)) {
+                nameTextField.setText(dirName);
+            }
+
+            Size newSize = CvUtil.scaleToFit(firstImage.size(), EOCVSim.DEFAULT_EOCV_SIZE);
+
+            this.sizeFieldsInput.getWidthTextField().setText(String.valueOf(Math.round(newSize.width)));
+            this.sizeFieldsInput.getHeightTextField().setText(String.valueOf(Math.round(newSize.height)));
+
+            selectedValidDir = true;
+        } else {
+            dirSelector.getDirTextField().setText("No images found in selected directory.");
+            selectedValidDir = false;
+        }
+
+        if(firstImage != null) firstImage.release();
+
+        updateCreateBtt();
+
+    }
+
+    public void close() {
+        createImageSequenceSource.setVisible(false);
+        createImageSequenceSource.dispose();
+    }
+
+    public void createSource(String sourceName, String dirPath, Size size,
+                             ImageSequenceSource.PlaybackMode mode, double fps, boolean loop) {
+        eocvSim.onMainUpdate.doOnce(() ->
+                eocvSim.inputSourceManager.addInputSource(
+                        sourceName,
+                        new ImageSequenceSource(dirPath, size, mode, fps, loop)
+                )
+        );
+    }
+
+    private void updateFpsSpinner() {
+        fpsSpinner.setEnabled(modeComboBox.getSelectedEnum() == ImageSequenceSource.PlaybackMode.FIXED_RATE);
+    }
+
+    public void updateCreateBtt() {
+        createButton.setEnabled(!nameTextField.getText().trim().equals("")
+                && sizeFieldsInput.getValid()
+                && selectedValidDir
+                && !eocvSim.inputSourceManager.isNameOnUse(nameTextField.getText()));
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.gui.dialog;
+
+import com.github.serivesmejia.eocvsim.EOCVSim;
+import com.github.serivesmejia.eocvsim.gui.component.input.FileSelector;
+import com.github.serivesmejia.eocvsim.input.source.RawCaptureSource;
+import com.github.serivesmejia.eocvsim.util.FileFilters;
+import com.github.serivesmejia.eocvsim.util.StrUtil;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.io.File;
+
+public class CreateRawCaptureSource {
+
+    public JDialog createRawCaptureSource = null;
+
+    public JTextField nameTextField = null;
+
+    public FileSelector fileSelectorCapture = null;
+
+    public JButton createButton = null;
+    public boolean selectedValidCapture = false;
+
+    private EOCVSim eocvSim = null;
+
+    public CreateRawCaptureSource(JFrame parent, EOCVSim eocvSim) {
+
+        createRawCaptureSource = new JDialog(parent);
+        this.eocvSim = eocvSim;
+
+        eocvSim.visualizer.childDialogs.add(createRawCaptureSource);
+
+        initCreateRawCaptureSource();
+
+    }
+
+    public void initCreateRawCaptureSource() {
+
+        createRawCaptureSource.setModal(true);
+
+        createRawCaptureSource.setTitle("Create raw capture source");
+        createRawCaptureSource.setSize(370, 160);
+
+        JPanel contentsPanel = new JPanel(new GridLayout(3, 1));
+
+        //file select
+        fileSelectorCapture = new FileSelector(18, FileFilters.rawCaptureFilter);
+
+        fileSelectorCapture.onFileSelect.doPersistent(() ->
+                captureFileSelected(fileSelectorCapture.getLastSelectedFile())
+        );
+
+        contentsPanel.add(fileSelectorCapture);
+
+        contentsPanel.setBorder(BorderFactory.createEmptyBorder(15, 0, 0, 0));
+
+        //Name part
+
+        JPanel namePanel = new JPanel(new FlowLayout());
+
+        JLabel nameLabel = new JLabel("Source name: ");
+        nameLabel.setHorizontalAlignment(JLabel.LEFT);
+
+        nameTextField = new JTextField("RawCaptureSource-" + (eocvSim.inputSourceManager.sources.size() + 1), 15);
+
+        namePanel.add(nameLabel);
+        namePanel.add(nameTextField);
+
+        contentsPanel.add(namePanel);
+
+        // Bottom buttons
+        JPanel buttonsPanel = new JPanel(new FlowLayout());
+        createButton = new JButton("Create");
+        createButton.setEnabled(selectedValidCapture);
+
+        buttonsPanel.add(createButton);
+
+        JButton cancelButton = new JButton("Cancel");
+        buttonsPanel.add(cancelButton);
+
+        contentsPanel.add(buttonsPanel);
+
+        //Add contents
+        createRawCaptureSource.getContentPane().add(contentsPanel, BorderLayout.CENTER);
+
+        nameTextField.getDocument().addDocumentListener(new DocumentListener() {
+            public void changedUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            public void insertUpdate(DocumentEvent e) {
+                changed();
+            }
+
+            public void changed() {
+                updateCreateBtt();
+            }
+        });
+
+        createButton.addActionListener(e -> {
+            createSource(nameTextField.getText(), fileSelectorCapture.getLastSelectedFile().getAbsolutePath());
+            close();
+        });
+
+        cancelButton.addActionListener(e -> close());
+
+        createRawCaptureSource.setResizable(false);
+        createRawCaptureSource.setLocationRelativeTo(null);
+        createRawCaptureSource.setVisible(true);
+
+    }
+
+    public void captureFileSelected(File f) {
+
+        RawCaptureSource testSource = new RawCaptureSource(f.getAbsolutePath());
+
+        if (testSource.init()) {
+
+            String fileName = StrUtil.getFileBaseName(f.getName());
+            if(!fileName.trim().equals("") && !eocvSim.inputSourceManager.isNameOnUse(fileName)) {
+                nameTextField.setText(fileName);
+            }
+
+            selectedValidCapture = true;
+        } else {
+            fileSelectorCapture.getDirTextField().setText("Unable to load selected file.");
+            selectedValidCapture = false;
+        }
+
+        testSource.reset();
+
+        updateCreateBtt();
+
+    }
+
+    public void close() {
+        createRawCaptureSource.setVisible(false);
+        createRawCaptureSource.dispose();
+    }
+
+    public void createSource(String sourceName, String capturePath) {
+        eocvSim.onMainUpdate.doOnce(() ->
+                eocvSim.inputSourceManager.addInputSource(
+                        sourceName,
+                        new RawCaptureSource(capturePath)
+                )
+        );
+    }
+
+    public void updateCreateBtt() {
+        createButton.setEnabled(!nameTextField.getText().trim().equals("")
+                && selectedValidCapture
+                && !eocvSim.inputSourceManager.isNameOnUse(nameTextField.getText()));
+    }
+
+}
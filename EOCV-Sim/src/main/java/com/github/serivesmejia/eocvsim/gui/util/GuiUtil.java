@@ -26,7 +26,10 @@ package com.github.serivesmejia.eocvsim.gui.util;
 import com.github.serivesmejia.eocvsim.EOCVSim;
 import com.github.serivesmejia.eocvsim.gui.DialogFactory;
 import com.github.serivesmejia.eocvsim.gui.dialog.FileAlreadyExists;
+import com.github.serivesmejia.eocvsim.output.RawCaptureWriter;
+import com.github.serivesmejia.eocvsim.output.TelemetryCaptureSession;
 import com.github.serivesmejia.eocvsim.util.CvUtil;
+import com.github.serivesmejia.eocvsim.util.FileFilters;
 import com.github.serivesmejia.eocvsim.util.Log;
 import com.github.serivesmejia.eocvsim.util.SysUtil;
 import org.opencv.core.Mat;
@@ -212,6 +215,93 @@ public final class GuiUtil {
 
     }
 
+    public static void saveProfilerFileChooser(Component parent, EOCVSim eocvSim) {
+
+        FileNameExtensionFilter csvFilter = new FileNameExtensionFilter("CSV (*.csv)", "csv");
+        FileNameExtensionFilter jsonFilter = new FileNameExtensionFilter("JSON (*.json)", "json");
+
+        DialogFactory.createFileChooser(parent, DialogFactory.FileChooser.Mode.SAVE_FILE_SELECT, csvFilter, jsonFilter)
+
+                .addCloseListener((MODE, selectedFile, selectedFileFilter) -> {
+                    if (MODE == JFileChooser.APPROVE_OPTION) {
+
+                        Optional<String> extension = SysUtil.getExtensionByStringHandling(selectedFile.getName());
+
+                        //append the selected extension if the user didn't type a valid one
+                        if (!extension.isPresent() || !(extension.get().equalsIgnoreCase("csv") || extension.get().equalsIgnoreCase("json"))) {
+                            String ext = selectedFileFilter instanceof FileNameExtensionFilter ?
+                                    ((FileNameExtensionFilter) selectedFileFilter).getExtensions()[0] : "csv";
+
+                            selectedFile = new File(selectedFile + "." + ext);
+                        }
+
+                        if (selectedFile.exists()) {
+                            FileAlreadyExists.UserChoice userChoice = DialogFactory.createFileAlreadyExistsDialog(eocvSim); //create confirm dialog
+                            if (userChoice != FileAlreadyExists.UserChoice.REPLACE) return;
+                        }
+
+                        if (eocvSim.profiler.saveTo(selectedFile)) {
+                            Log.info("GuiUtil", "Saved profiler data to " + selectedFile.getAbsolutePath());
+                        }
+
+                    }
+                });
+
+    }
+
+    public static void rawCaptureFileChooser(Component parent, EOCVSim eocvSim) {
+
+        DialogFactory.createFileChooser(parent, DialogFactory.FileChooser.Mode.SAVE_FILE_SELECT, FileFilters.rawCaptureFilter)
+
+                .addCloseListener((MODE, selectedFile, selectedFileFilter) -> {
+                    if (MODE == JFileChooser.APPROVE_OPTION) {
+
+                        Optional<String> extension = SysUtil.getExtensionByStringHandling(selectedFile.getName());
+
+                        if (!extension.isPresent() || !extension.get().equalsIgnoreCase(RawCaptureWriter.FILE_EXTENSION)) {
+                            selectedFile = new File(selectedFile + "." + RawCaptureWriter.FILE_EXTENSION);
+                        }
+
+                        if (selectedFile.exists()) {
+                            FileAlreadyExists.UserChoice userChoice = DialogFactory.createFileAlreadyExistsDialog(eocvSim); //create confirm dialog
+                            if (userChoice != FileAlreadyExists.UserChoice.REPLACE) return;
+                        }
+
+                        File captureFile = selectedFile;
+                        eocvSim.onMainUpdate.doOnce(() -> eocvSim.startRawCapture(captureFile));
+
+                    }
+                });
+
+    }
+
+    public static void telemetryCaptureFileChooser(Component parent, EOCVSim eocvSim) {
+
+        DialogFactory.createFileChooser(parent, DialogFactory.FileChooser.Mode.SAVE_FILE_SELECT, FileFilters.telemetryCaptureFilter)
+
+                .addCloseListener((MODE, selectedFile, selectedFileFilter) -> {
+                    if (MODE == JFileChooser.APPROVE_OPTION) {
+
+                        Optional<String> extension = SysUtil.getExtensionByStringHandling(selectedFile.getName());
+
+                        //written as ndjson unless a csv file was chosen
+                        if (!extension.isPresent() || !Arrays.asList(TelemetryCaptureSession.FILE_EXTENSIONS).contains(extension.get().toLowerCase())) {
+                            selectedFile = new File(selectedFile + ".ndjson");
+                        }
+
+                        if (selectedFile.exists()) {
+                            FileAlreadyExists.UserChoice userChoice = DialogFactory.createFileAlreadyExistsDialog(eocvSim); //create confirm dialog
+                            if (userChoice != FileAlreadyExists.UserChoice.REPLACE) return;
+                        }
+
+                        File captureFile = selectedFile;
+                        eocvSim.onMainUpdate.doOnce(() -> eocvSim.startTelemetryCapture(captureFile));
+
+                    }
+                });
+
+    }
+
     public static ListModel<String> isToListModel(InputStream is, Charset charset) throws UnsupportedEncodingException {
 
         DefaultListModel<String> listModel = new DefaultListModel<>();
@@ -25,19 +25,28 @@ package com.github.serivesmejia.eocvsim.gui.util;
 
 import com.github.serivesmejia.eocvsim.util.Log;
 import com.github.serivesmejia.eocvsim.util.fps.FpsCounter;
+import com.github.serivesmejia.eocvsim.util.image.MatPool;
 import org.firstinspires.ftc.robotcore.internal.collections.EvictingBlockingQueue;
 import org.opencv.core.Mat;
-import org.openftc.easyopencv.MatRecycler;
 
 import java.util.ArrayList;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MatPoster {
 
     private final ArrayList<Postable> postables = new ArrayList<>();
+    //postables which don't modify the mat they receive, they
+    //get the queued mat directly instead of a copy of it
+    private final ArrayList<Postable> readOnlyPostables = new ArrayList<>();
+    //postables which also receive the timestamp of each mat,
+    //they're always considered read only
+    private final ArrayList<TimestampedPostable> timestampedPostables = new ArrayList<>();
 
-    private final EvictingBlockingQueue<Mat> postQueue;
-    private final MatRecycler matRecycler;
+    private final EvictingBlockingQueue<PostedMat> postQueue;
+    private final MatPool matPool;
 
     private final String name;
 
@@ -45,7 +54,19 @@ public class MatPoster {
 
     public final FpsCounter fpsCounter = new FpsCounter();
 
+    //frames which were never handed to the postables, either evicted
+    //from the queue or skipped because of the max post rate
+    private final AtomicLong droppedFrames = new AtomicLong(0);
+    //frames which were posted and haven't been handed to the postables nor dropped yet
+    private final AtomicInteger pendingFrames = new AtomicInteger(0);
+
+    //whether post() waits for room in the queue instead of evicting the oldest frame
+    private final boolean blocking;
+
+    private volatile long minPostIntervalNanos = 0;
+
     private final Object lock = new Object();
+    private final Object pauseLock = new Object();
 
     private volatile boolean paused = false;
 
@@ -55,17 +76,30 @@ public class MatPoster {
         return new MatPoster(name, maxQueueItems, null);
     }
 
+    /**
+     * Creates a poster which never drops frames, post() blocks until one of the
+     * queued frames has been handed to the postables if the queue is full. Meant
+     * for postables which need every single frame, such as lossless captures
+     */
+    public static MatPoster createBlocking(String name, int maxQueueItems) {
+        //with as many mats as the queue can hold, the queue is never full when
+        //a mat is taken so it doesn't evict, and take() waits for one otherwise
+        return new MatPoster(name, maxQueueItems, new MatPool("MatPoster-" + name, maxQueueItems, MatPool.Policy.BLOCK), true);
+    }
+
     public MatPoster(String name, int maxQueueItems) {
-        this(name, new MatRecycler(maxQueueItems + 2));
+        this(name, maxQueueItems, new MatPool("MatPoster-" + name, maxQueueItems + 2, MatPool.Policy.GROW));
     }
 
-    public MatPoster(String name, MatRecycler recycler) {
-        this(name, recycler.getSize(), recycler);
+    public MatPoster(String name, int maxQueueItems, MatPool pool) {
+        this(name, maxQueueItems, pool, false);
     }
 
-    public MatPoster(String name, int maxQueueItems, MatRecycler recycler) {
+    private MatPoster(String name, int maxQueueItems, MatPool pool, boolean blocking) {
+        this.blocking = blocking;
+
         postQueue = new EvictingBlockingQueue<>(new ArrayBlockingQueue<>(maxQueueItems));
-        matRecycler = recycler;
+        matPool = pool;
         posterThread = new Thread(new PosterRunnable(), "MatPoster-" + name + "-Thread");
 
         this.name = name;
@@ -74,24 +108,56 @@ public class MatPoster {
     }
 
     public void post(Mat m) {
+        post(m, System.nanoTime());
+    }
+
+    /**
+     * @param timestampNanos when the posted frame was captured, in
+     *                       the System.nanoTime() time base
+     */
+    public void post(Mat m, long timestampNanos) {
         if (m == null || m.empty()) {
             Log.warn("MatPoster-" + name, "Tried to post empty or null mat, skipped this frame.");
             return;
         }
 
-        if (matRecycler != null) {
-            if(matRecycler.getAvailableMatsAmount() < 1) {
-                //evict one if we don't have any available mats in the recycler
+        if (matPool != null) {
+            MatPool.PooledMat pooledMat = blocking ? matPool.take(m) : matPool.tryTake(m);
+
+            if (pooledMat == null) {
+                //evict one if all the mats of this size are queued
                 evict(postQueue.poll());
+                pooledMat = matPool.take(m);
             }
 
-            MatRecycler.RecyclableMat recycledMat = matRecycler.takeMat();
-            m.copyTo(recycledMat);
+            m.copyTo(pooledMat);
 
-            postQueue.offer(recycledMat);
+            pendingFrames.incrementAndGet();
+            postQueue.offer(new PostedMat(pooledMat, timestampNanos));
         } else {
-            postQueue.offer(m);
+            pendingFrames.incrementAndGet();
+            postQueue.offer(new PostedMat(m, timestampNanos));
+        }
+    }
+
+    /**
+     * Posts a mat without copying it, by taking a reference to it.
+     * The mat will be returned to its pool once it has been
+     * posted, so the caller should still return its own reference.
+     * The contents of the mat must not change after calling this.
+     */
+    public void postShared(MatPool.PooledMat m) {
+        postShared(m, System.nanoTime());
+    }
+
+    public void postShared(MatPool.PooledMat m, long timestampNanos) {
+        if (m == null || m.empty()) {
+            Log.warn("MatPoster-" + name, "Tried to post empty or null mat, skipped this frame.");
+            return;
         }
+
+        pendingFrames.incrementAndGet();
+        postQueue.offer(new PostedMat(m.retain(), timestampNanos));
     }
 
     public void synchronizedPost(Mat m) {
@@ -100,7 +166,7 @@ public class MatPoster {
 
     public Mat pull() throws InterruptedException {
         synchronized(lock) {
-            return postQueue.take();
+            return postQueue.take().mat;
         }
     }
 
@@ -108,7 +174,11 @@ public class MatPoster {
         if(postQueue.size() == 0) return;
 
         synchronized(lock) {
-            postQueue.clear();
+            PostedMat posted;
+            while ((posted = postQueue.poll()) != null) {
+                pendingFrames.decrementAndGet();
+                recycle(posted.mat);
+            }
         }
     }
 
@@ -119,12 +189,32 @@ public class MatPoster {
     }
 
     public void addPostable(Postable postable) {
+        addPostable(postable, false);
+    }
+
+    /**
+     * @param readOnly whether the postable promises not to modify the mats
+     *                 it receives, in which case no copy is made for it
+     */
+    public void addPostable(Postable postable, boolean readOnly) {
         //start mat posting thread if it hasn't been started yet
         if (!posterThread.isAlive() && !hasPosterThreadStarted) {
             posterThread.start();
         }
 
-        postables.add(postable);
+        if (readOnly) {
+            readOnlyPostables.add(postable);
+        } else {
+            postables.add(postable);
+        }
+    }
+
+    public void addTimestampedPostable(TimestampedPostable postable) {
+        if (!posterThread.isAlive() && !hasPosterThreadStarted) {
+            posterThread.start();
+        }
+
+        timestampedPostables.add(postable);
     }
 
     public void stop() {
@@ -132,26 +222,71 @@ public class MatPoster {
 
         posterThread.interrupt();
 
-        for (Mat m : postQueue) {
-            if (m != null) {
-                if(m instanceof MatRecycler.RecyclableMat) {
-                    ((MatRecycler.RecyclableMat)m).returnMat();
+        for (PostedMat posted : postQueue) {
+            if (posted != null) {
+                if(posted.mat instanceof MatPool.PooledMat) {
+                    ((MatPool.PooledMat)posted.mat).returnMat();
                 }
             }
         }
 
-        matRecycler.releaseAll();
+        if (matPool != null) matPool.releaseAll();
+    }
+
+    /**
+     * Limits how many times per second the postables will be called,
+     * only the latest frame is posted and the older ones are dropped.
+     * Useful for posters which display frames, as there's no point in
+     * posting faster than the display refresh rate
+     * @param postsPerSecond the max rate, or 0 for no limit
+     */
+    public void setMaxPostRate(int postsPerSecond) {
+        minPostIntervalNanos = postsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / postsPerSecond : 0;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Waits for all the frames posted so far to be handed to the postables
+     * (or dropped), e.g so that none of them is lost when stopping the poster
+     * @return false if there were still frames pending after the timeout
+     */
+    public boolean awaitPending(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        while (pendingFrames.get() > 0) {
+            if (System.nanoTime() >= deadline || !posterThread.isAlive()) return false;
+            Thread.sleep(1);
+        }
+
+        return true;
+    }
+
+    private void evict(PostedMat posted) {
+        if (posted == null) return;
+
+        droppedFrames.incrementAndGet();
+        pendingFrames.decrementAndGet();
+        recycle(posted.mat);
     }
 
-    private void evict(Mat m) {
-        if (m instanceof MatRecycler.RecyclableMat) {
-            ((MatRecycler.RecyclableMat) m).returnMat();
+    //pooled mats might be shared with other posters, so
+    //they're only returned and never released in here
+    private static void recycle(Mat m) {
+        if (m instanceof MatPool.PooledMat) {
+            ((MatPool.PooledMat) m).returnMat();
+        } else {
+            m.release();
         }
-        m.release();
     }
 
     public void setPaused(boolean paused) {
-        this.paused = paused;
+        synchronized(pauseLock) {
+            this.paused = paused;
+            pauseLock.notifyAll(); //wake up the poster thread if it was waiting
+        }
     }
 
     public boolean getPaused() {
@@ -168,49 +303,108 @@ public class MatPoster {
         void post(Mat m);
     }
 
+    public interface TimestampedPostable {
+        void post(Mat m, long timestampNanos);
+    }
+
+    private static class PostedMat {
+        final Mat mat;
+        final long timestampNanos;
+
+        PostedMat(Mat mat, long timestampNanos) {
+            this.mat = mat;
+            this.timestampNanos = timestampNanos;
+        }
+    }
+
     private class PosterRunnable implements Runnable {
 
         private Mat postableMat = new Mat();
 
+        private long lastPostNanos = 0;
+
         @Override
         public void run() {
             hasPosterThreadStarted = true;
 
             while (!Thread.interrupted()) {
+                try {
+                    waitWhilePaused();
+
+                    //parks this thread until a frame is posted, the queue
+                    //still evicts the older frames as it did before
+                    PostedMat posted = postQueue.take();
+
+                    if (minPostIntervalNanos > 0) {
+                        posted = waitForNextPost(posted);
+                    }
+
+                    Mat takenMat = posted.mat;
+
+                    synchronized(lock) {
+                        fpsCounter.update();
+
+                        try {
+                            for (Postable postable : readOnlyPostables) {
+                                postable.post(takenMat);
+                            }
+
+                            for (TimestampedPostable postable : timestampedPostables) {
+                                postable.post(takenMat, posted.timestampNanos);
+                            }
+
+                            //the rest might modify the mat, so each one gets a copy
+                            for (Postable postable : postables) {
+                                takenMat.copyTo(postableMat);
+                                postable.post(postableMat);
+                            }
+                        } finally {
+                            pendingFrames.decrementAndGet();
+                            recycle(takenMat);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                } catch (Exception ex) { }
+            }
 
-                while(paused && !Thread.currentThread().isInterrupted()) {
-                    Thread.yield();
-                }
+            Log.warn("MatPoster-" + name +"-Thread", "Thread interrupted (" + Integer.toHexString(hashCode()) + ")");
 
-                if (postQueue.size() == 0 || postables.size() == 0) continue; //skip if we have no queued frames
+        }
 
-                synchronized(lock) {
-                    fpsCounter.update();
+        //sleeps until the max post rate allows posting again, and then
+        //takes the latest frame that was posted in the meantime
+        private PostedMat waitForNextPost(PostedMat posted) throws InterruptedException {
+            long waitNanos = lastPostNanos + minPostIntervalNanos - System.nanoTime();
+
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    pendingFrames.decrementAndGet();
+                    recycle(posted.mat);
+                    throw e;
+                }
+            }
 
-                    try {
-                        Mat takenMat = postQueue.take();
+            PostedMat newer;
+            while ((newer = postQueue.poll()) != null) {
+                evict(posted);
+                posted = newer;
+            }
 
-                        for (Postable postable : postables) {
-                            takenMat.copyTo(postableMat);
-                            postable.post(postableMat);
-                        }
+            lastPostNanos = System.nanoTime();
 
-                        takenMat.release();
+            return posted;
+        }
 
-                        if (takenMat instanceof MatRecycler.RecyclableMat) {
-                            ((MatRecycler.RecyclableMat) takenMat).returnMat();
-                        }
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                        break;
-                    } catch (Exception ex) { }
+        private void waitWhilePaused() throws InterruptedException {
+            synchronized(pauseLock) {
+                while(paused) {
+                    pauseLock.wait();
                 }
-
             }
-
-            Log.warn("MatPoster-" + name +"-Thread", "Thread interrupted (" + Integer.toHexString(hashCode()) + ")");
-
         }
     }
 
-}
\ No newline at end of file
+}
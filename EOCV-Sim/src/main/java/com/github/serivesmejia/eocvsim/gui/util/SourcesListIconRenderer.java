@@ -64,12 +64,14 @@ public class SourcesListIconRenderer extends DefaultListCellRenderer {
 
         switch (sourceManager.getSourceType((String) value)) {
             case IMAGE:
+            case IMAGE_SEQUENCE:
                 label.setIcon(imgIcon);
                 break;
             case CAMERA:
                 label.setIcon(camIcon);
                 break;
             case VIDEO:
+            case RAW_CAPTURE:
                 label.setIcon(vidIcon);
                 break;
         }
@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.headless
+
+import com.github.serivesmejia.eocvsim.EOCVSim
+import com.github.serivesmejia.eocvsim.gui.util.MatPoster
+import com.github.serivesmejia.eocvsim.input.InputSource
+import com.github.serivesmejia.eocvsim.input.source.ImageSequenceSource
+import com.github.serivesmejia.eocvsim.input.source.ImageSource
+import com.github.serivesmejia.eocvsim.input.source.RawCaptureSource
+import com.github.serivesmejia.eocvsim.input.source.VideoSource
+import com.github.serivesmejia.eocvsim.output.TelemetryCaptureSession
+import com.github.serivesmejia.eocvsim.tuner.sweep.ParameterSweep
+import com.github.serivesmejia.eocvsim.tuner.sweep.SweepParameter
+import com.github.serivesmejia.eocvsim.util.CvUtil
+import com.github.serivesmejia.eocvsim.util.FileFilters
+import com.github.serivesmejia.eocvsim.util.Log
+import com.qualcomm.robotcore.util.ElapsedTime
+import org.opencv.core.Mat
+import org.opencv.core.Size
+import org.opencv.imgcodecs.Imgcodecs
+import org.opencv.imgproc.Imgproc
+import org.openftc.easyopencv.OpenCvPipeline
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileWriter
+import kotlin.system.exitProcess
+
+/**
+ * Runs a single pipeline over a list of image and video files without
+ * creating the gui, as fast as the cpu allows (no fps limit). The output
+ * frames and the telemetry of every frame are written to the output folder,
+ * in a subfolder per source.
+ *
+ * When sweep parameters are given, the TunableFields of the pipeline are
+ * swept over all of the frames of the sources instead, see ParameterSweep.
+ */
+class HeadlessRunner(val eocvSim: EOCVSim, val params: Parameters) {
+
+    companion object {
+        private const val TAG = "HeadlessRunner"
+    }
+
+    private val pipelineManager = eocvSim.pipelineManager
+    private val inputSourceManager = eocvSim.inputSourceManager
+    private val profiler = eocvSim.profiler
+
+    private val bgrOutputMat = Mat()
+
+    @Volatile private var currentOutputDir: File? = null
+    @Volatile private var currentFrame = 0
+
+    @Volatile private var hasTimedOut = false
+
+    /**
+     * Runs the pipeline over all of the sources
+     * @return false if any source failed to be processed
+     */
+    fun run(): Boolean {
+        Log.info(TAG, "Running ${params.pipelineName} headlessly over ${params.sources.size} source(s)")
+        Log.blank()
+
+        if(inputSourceManager.lastMatFromSource == null)
+            inputSourceManager.lastMatFromSource = Mat()
+
+        pipelineManager.init()
+
+        val pipelineIndex = findPipelineIndex()
+        if(pipelineIndex == -1) {
+            Log.error(TAG, "Couldn't find a pipeline named ${params.pipelineName}")
+            return false
+        }
+
+        if(!params.outputDir.exists()) params.outputDir.mkdirs()
+
+        if(params.sweepParameters.isNotEmpty()) {
+            val pipelineClass = pipelineManager.pipelines[pipelineIndex]
+
+            val loadedClass = try {
+                pipelineClass.load()
+            } catch(ex: Exception) {
+                null
+            } catch(ex: LinkageError) {
+                null
+            }
+
+            if(loadedClass == null) {
+                Log.error(TAG, "Unable to load pipeline class ${pipelineClass.name}")
+                return false
+            }
+
+            return runSweep(loadedClass)
+        }
+
+        if(params.writeFrames) {
+            pipelineManager.pipelineOutputPostables.add(MatPoster.Postable { writeFrame(it) })
+        }
+
+        pipelineManager.onPipelineTimeout.doPersistent { hasTimedOut = true }
+
+        var failedSources = 0
+        val usedNames = HashSet<String>()
+
+        for(file in params.sources) {
+            //avoid overwriting the output of a source with the same file name
+            var name = file.nameWithoutExtension
+            var suffix = 1
+            while(!usedNames.add(name)) {
+                name = "${file.nameWithoutExtension}_${suffix++}"
+            }
+
+            if(!runSource(file, name, pipelineIndex)) failedSources++
+        }
+
+        //latencies of every stage across all of the sources
+        profiler.saveTo(File(params.outputDir, "profile.csv"))
+        profiler.saveTo(File(params.outputDir, "profile.json"))
+
+        Log.info(TAG, "Finished processing ${params.sources.size - failedSources}/${params.sources.size} source(s), output written to ${params.outputDir.absolutePath}")
+
+        bgrOutputMat.release()
+
+        return failedSources == 0
+    }
+
+    private fun runSource(file: File, name: String, pipelineIndex: Int): Boolean {
+        val source = createSource(file) ?: return false
+        source.eocvSim = eocvSim
+
+        if(!source.init()) {
+            Log.error(TAG, "Unable to open source ${file.absolutePath}")
+            return false
+        }
+
+        val outputDir = File(params.outputDir, name)
+        outputDir.mkdirs()
+
+        inputSourceManager.currentInputSource = source
+        currentOutputDir = outputDir
+        currentFrame = 0
+        hasTimedOut = false
+
+        //instantiate a fresh pipeline for every source
+        pipelineManager.requestForceChangePipeline(pipelineIndex)
+
+        //every telemetry item of every frame, without dropping any
+        val telemetryCapture = TelemetryCaptureSession(File(outputDir, "telemetry.csv"), false)
+        pipelineManager.pipelineTelemetryListeners.add(telemetryCapture.telemetryListener)
+
+        val elapsedTime = ElapsedTime()
+        var succeeded = true
+
+        try {
+            while(!Thread.currentThread().isInterrupted) {
+                profiler.measure(profiler.onMainUpdateStage) { eocvSim.onMainUpdate.run() }
+
+                profiler.measure(profiler.inputSourceStage) { inputSourceManager.update(false) }
+                if(source.hasEnded()) break
+
+                profiler.measure(profiler.pipelineStage) { pipelineManager.update(inputSourceManager.lastMatFromSource) }
+
+                if(hasTimedOut) {
+                    Log.error(TAG, "Pipeline timed out while processing frame $currentFrame of $name, skipping the rest of this source")
+                    succeeded = false
+                    break
+                }
+
+                if(pipelineManager.currentPipelineIndex != pipelineIndex || pipelineManager.currentPipeline == null) {
+                    Log.error(TAG, "Unable to instantiate pipeline ${params.pipelineName}")
+                    succeeded = false
+                    break
+                }
+
+                currentFrame++
+
+                //images are a single frame, there's no point in processing them again
+                if(source is ImageSource || (params.maxFramesPerSource > 0 && currentFrame >= params.maxFramesPerSource)) {
+                    break
+                }
+            }
+        } finally {
+            pipelineManager.pipelineTelemetryListeners.remove(telemetryCapture.telemetryListener)
+            telemetryCapture.stop()
+
+            source.reset()
+            inputSourceManager.currentInputSource = null
+        }
+
+        val seconds = elapsedTime.seconds()
+        Log.info(TAG, "Processed $currentFrame frame(s) of $name in ${String.format("%.2f", seconds)}s (${String.format("%.2f", currentFrame / seconds)} FPS)")
+
+        return succeeded
+    }
+
+    private fun runSweep(pipelineClass: Class<out OpenCvPipeline>): Boolean {
+        val sweep = ParameterSweep(
+            pipelineManager, eocvSim.tunerManager, pipelineClass,
+            params.sweepParameters, params.scoreCaption!!, params.sweepThreads
+        )
+
+        val frames = ArrayList<Mat>()
+        for(file in params.sources) {
+            loadFrames(file, frames)
+        }
+
+        if(frames.isEmpty()) {
+            Log.error(TAG, "No frames were loaded from the sources, nothing to sweep over")
+            return false
+        }
+
+        val elapsedTime = ElapsedTime()
+
+        val results = try {
+            sweep.run(frames)
+        } catch(ex: IllegalArgumentException) {
+            Log.error(TAG, ex.message ?: "Invalid sweep parameters")
+            return false
+        } finally {
+            for(frame in frames) frame.release()
+        }
+
+        Log.info(TAG, "Swept ${results.size} combination(s) in ${String.format("%.2f", elapsedTime.seconds())}s")
+
+        val csvFile = File(params.outputDir, "sweep.csv")
+
+        BufferedWriter(FileWriter(csvFile)).use { writer ->
+            writer.write(params.sweepParameters.joinToString(",") { "\"$it\"" } + ",score,scored_frames,error")
+            writer.newLine()
+
+            for(result in results) {
+                writer.write(result.values.joinToString(","))
+                writer.write(",${if(result.score.isNaN()) "" else result.score.toString()},${result.scoredFrames},")
+                result.error?.let { writer.write("\"${it.replace("\"", "\"\"")}\"") }
+                writer.newLine()
+            }
+        }
+
+        val scored = results.filter { !it.score.isNaN() }
+        val best = if(params.minimizeScore) scored.minByOrNull { it.score } else scored.maxByOrNull { it.score }
+
+        if(best == null) {
+            Log.warn(TAG, "The pipeline didn't report a numeric \"${params.scoreCaption}\" telemetry value for any combination")
+        } else {
+            val values = params.sweepParameters.zip(best.values).joinToString(", ") { (p, v) -> "$p = $v" }
+            Log.info(TAG, "Best combination: $values (score ${best.score})")
+        }
+
+        Log.info(TAG, "Sweep results written to ${csvFile.absolutePath}")
+
+        return results.none { it.error != null }
+    }
+
+    //reads all of the frames of a source into memory, for the sweep
+    private fun loadFrames(file: File, frames: MutableList<Mat>) {
+        val source = createSource(file) ?: return
+        source.eocvSim = eocvSim
+
+        if(!source.init()) {
+            Log.error(TAG, "Unable to open source ${file.absolutePath}")
+            return
+        }
+
+        //every frame is kept in memory for the whole sweep
+        if(source !is ImageSource && params.maxFramesPerSource <= 0) {
+            Log.warn(TAG, "Loading every frame of ${file.name} into memory for the sweep, use --max-frames to limit them if it's a long video")
+        }
+
+        var count = 0
+
+        try {
+            while(!Thread.currentThread().isInterrupted) {
+                val mat = source.update()
+
+                //sources which ended return their previous frame again
+                //on that update, which was already added the last time
+                if(source.hasEnded()) break
+
+                if(mat != null && !mat.empty()) {
+                    frames.add(mat.clone())
+                    count++
+                }
+
+                if(source is ImageSource || (params.maxFramesPerSource > 0 && count >= params.maxFramesPerSource)) {
+                    break
+                }
+            }
+        } finally {
+            source.close()
+        }
+
+        Log.info(TAG, "Loaded $count frame(s) from ${file.name}")
+    }
+
+    private fun createSource(file: File): InputSource? {
+        //directories are read as image sequences, once
+        //and as fast as the pipeline is able to process
+        if(file.isDirectory) {
+            return ImageSequenceSource(
+                file.absolutePath, params.size,
+                ImageSequenceSource.PlaybackMode.AS_FAST_AS_POSSIBLE, 0.0, false
+            )
+        }
+
+        if(!file.isFile) {
+            Log.error(TAG, "Source ${file.absolutePath} doesn't exist or is not a file")
+            return null
+        }
+
+        return when {
+            FileFilters.imagesFilter.accept(file) -> ImageSource(file.absolutePath, params.size)
+            //replayed frame by frame, as they were given to the pipeline when capturing
+            FileFilters.rawCaptureFilter.accept(file) -> RawCaptureSource(file.absolutePath).apply {
+                playOnce = true
+                ignoreTimestamps = true
+            }
+            FileFilters.videoMediaFilter.accept(file) -> {
+                val size = params.size ?: CvUtil.getVideoSize(file.absolutePath)
+                VideoSource(file.absolutePath, size).apply { readOnce = true }
+            }
+            else -> {
+                Log.error(TAG, "Unsupported source file type ${file.absolutePath}")
+                null
+            }
+        }
+    }
+
+    private fun findPipelineIndex(): Int {
+        for((i, pipelineClass) in pipelineManager.pipelines.withIndex()) {
+            if(pipelineClass.simpleName == params.pipelineName || pipelineClass.name == params.pipelineName) {
+                return i
+            }
+        }
+
+        return -1
+    }
+
+    //called from the pipeline thread, before pipelineManager.update() returns
+    private fun writeFrame(outputMat: Mat) {
+        val outputDir = currentOutputDir ?: return
+
+        //pipelines work with RGB mats, but imwrite expects BGR
+        when(outputMat.channels()) {
+            3 -> Imgproc.cvtColor(outputMat, bgrOutputMat, Imgproc.COLOR_RGB2BGR)
+            4 -> Imgproc.cvtColor(outputMat, bgrOutputMat, Imgproc.COLOR_RGBA2BGRA)
+            else -> outputMat.copyTo(bgrOutputMat)
+        }
+
+        Imgcodecs.imwrite(File(outputDir, String.format("frame_%05d.png", currentFrame)).absolutePath, bgrOutputMat)
+    }
+
+    class Parameters(
+        val pipelineName: String,
+        val sources: List<File>,
+        val outputDir: File,
+        val size: Size? = null,
+        val writeFrames: Boolean = true,
+        val maxFramesPerSource: Int = 0,
+        val sweepParameters: List<SweepParameter> = listOf(),
+        val scoreCaption: String? = null,
+        val minimizeScore: Boolean = false,
+        val sweepThreads: Int = Runtime.getRuntime().availableProcessors()
+    ) {
+
+        companion object {
+            const val USAGE = "Usage: --headless --pipeline <name> [--output <dir>] [--size <width>x<height>] [--max-frames <n>] [--no-frames] [--sweep <field=start:end[:step]>... --score <caption> [--minimize] [--sweep-threads <n>]] <image or video files...>"
+
+            /**
+             * Parses the headless parameters from the command line arguments
+             * @return null if the "--headless" flag wasn't passed
+             */
+            @JvmStatic fun fromArgs(args: Array<String>): Parameters? {
+                if(!args.contains("--headless")) return null
+
+                var pipelineName: String? = null
+                var outputDir = File("eocvsim_output")
+                var size: Size? = null
+                var writeFrames = true
+                var maxFrames = 0
+                val sweepParameters = ArrayList<SweepParameter>()
+                var scoreCaption: String? = null
+                var minimizeScore = false
+                var sweepThreads = Runtime.getRuntime().availableProcessors()
+                val sources = ArrayList<File>()
+
+                var i = 0
+                while(i < args.size) {
+                    when(val arg = args[i]) {
+                        "--headless" -> {}
+                        "--pipeline" -> pipelineName = argValue(args, ++i)
+                        "--output" -> outputDir = File(argValue(args, ++i))
+                        "--size" -> size = parseSize(argValue(args, ++i))
+                        "--max-frames" -> maxFrames = argValue(args, ++i).toIntOrNull() ?: usageError("Invalid --max-frames value")
+                        "--no-frames" -> writeFrames = false
+                        "--sweep" -> sweepParameters.add(parseSweepParameter(argValue(args, ++i)))
+                        "--score" -> scoreCaption = argValue(args, ++i)
+                        "--minimize" -> minimizeScore = true
+                        "--sweep-threads" -> sweepThreads = argValue(args, ++i).toIntOrNull()?.takeIf { it > 0 } ?: usageError("Invalid --sweep-threads value")
+                        else -> {
+                            if(arg.startsWith("--")) usageError("Unknown option $arg")
+                            sources.add(File(arg))
+                        }
+                    }
+
+                    i++
+                }
+
+                if(pipelineName == null) usageError("No pipeline was specified")
+                if(sources.isEmpty()) usageError("No sources were specified")
+                if(sweepParameters.isNotEmpty() && scoreCaption == null) usageError("A --score telemetry caption is needed to sweep")
+
+                return Parameters(
+                    pipelineName, sources, outputDir, size, writeFrames, maxFrames,
+                    sweepParameters, scoreCaption, minimizeScore, sweepThreads
+                )
+            }
+
+            private fun argValue(args: Array<String>, index: Int): String {
+                if(index >= args.size) usageError("Missing value for ${args[index - 1]}")
+                return args[index]
+            }
+
+            private fun parseSweepParameter(str: String) = try {
+                SweepParameter.parse(str)
+            } catch(ex: IllegalArgumentException) {
+                usageError(ex.message ?: "Invalid --sweep value $str")
+            }
+
+            private fun parseSize(str: String): Size {
+                val parts = str.toLowerCase().split("x")
+                val width = parts.getOrNull(0)?.toDoubleOrNull()
+                val height = parts.getOrNull(1)?.toDoubleOrNull()
+
+                if(parts.size != 2 || width == null || height == null) usageError("Invalid --size value $str")
+
+                return Size(width, height)
+            }
+
+            private fun usageError(message: String): Nothing {
+                Log.error(TAG, message)
+                Log.info(TAG, USAGE)
+                exitProcess(1)
+            }
+        }
+
+    }
+
+}
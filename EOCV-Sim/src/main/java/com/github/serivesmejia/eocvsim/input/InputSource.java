@@ -48,6 +48,12 @@ public abstract class InputSource implements Comparable<InputSource> {
         return null;
     }
 
+    //whether this source has run out of frames (e.g a non-looping video
+    //which reached its end), only finite sources should override this
+    public boolean hasEnded() {
+        return false;
+    }
+
     public final InputSource cloneSource() {
         InputSource source = internalCloneSource();
         source.createdOn = createdOn;
@@ -24,7 +24,9 @@
 package com.github.serivesmejia.eocvsim.input;
 
 import com.github.serivesmejia.eocvsim.input.source.CameraSource;
+import com.github.serivesmejia.eocvsim.input.source.ImageSequenceSource;
 import com.github.serivesmejia.eocvsim.input.source.ImageSource;
+import com.github.serivesmejia.eocvsim.input.source.RawCaptureSource;
 import com.github.serivesmejia.eocvsim.input.source.VideoSource;
 import com.github.serivesmejia.eocvsim.util.Log;
 import com.github.serivesmejia.eocvsim.util.SysUtil;
@@ -43,7 +45,7 @@ public class InputSourceLoader {
     public static final String SOURCES_SAVEFILE_NAME = "eocvsim_sources.json";
     public static final File SOURCES_SAVEFILE = new File(SysUtil.getAppData() + File.separator + SOURCES_SAVEFILE_NAME);
 
-    public static final InputSourcesContainer.SourcesFileVersion CURRENT_FILE_VERSION = InputSourcesContainer.SourcesFileVersion.SEIS;
+    public static final InputSourcesContainer.SourcesFileVersion CURRENT_FILE_VERSION = InputSourcesContainer.SourcesFileVersion.OCHO;
 
     public HashMap<String, InputSource> loadedInputSources = new HashMap<>();
 
@@ -129,11 +131,13 @@ public class InputSourceLoader {
         public HashMap<String, ImageSource> imageSources = new HashMap<>();
         public HashMap<String, CameraSource> cameraSources = new HashMap<>();
         public HashMap<String, VideoSource> videoSources = new HashMap<>();
+        public HashMap<String, ImageSequenceSource> imageSequenceSources = new HashMap<>();
+        public HashMap<String, RawCaptureSource> rawCaptureSources = new HashMap<>();
 
         @Expose
         public SourcesFileVersion sourcesFileVersion = null;
 
-        enum SourcesFileVersion { DOS, SEIS, SIETE }
+        enum SourcesFileVersion { DOS, SEIS, SIETE, OCHO }
 
         public void updateAllSources() {
 
@@ -157,6 +161,20 @@ public class InputSourceLoader {
                 }
             }
 
+            //image sequence sources were added in SIETE
+            if(sourcesFileVersion.ordinal() >= 2 && imageSequenceSources != null) {
+                for (Map.Entry<String, ImageSequenceSource> entry : imageSequenceSources.entrySet()) {
+                    allSources.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            //and raw capture sources in OCHO
+            if(sourcesFileVersion.ordinal() >= 3 && rawCaptureSources != null) {
+                for (Map.Entry<String, RawCaptureSource> entry : rawCaptureSources.entrySet()) {
+                    allSources.put(entry.getKey(), entry.getValue());
+                }
+            }
+
         }
 
         public void classifySource(String sourceName, InputSource source) {
@@ -171,6 +189,12 @@ public class InputSourceLoader {
                 case VIDEO:
                     videoSources.put(sourceName, (VideoSource) source);
                     break;
+                case IMAGE_SEQUENCE:
+                    imageSequenceSources.put(sourceName, (ImageSequenceSource) source);
+                    break;
+                case RAW_CAPTURE:
+                    rawCaptureSources.put(sourceName, (RawCaptureSource) source);
+                    break;
             }
 
         }
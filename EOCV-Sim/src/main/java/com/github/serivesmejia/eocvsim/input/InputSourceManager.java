@@ -37,6 +37,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class InputSourceManager {
 
@@ -45,7 +46,9 @@ public class InputSourceManager {
     public volatile Mat lastMatFromSource = null;
     public volatile InputSource currentInputSource = null;
 
-    public volatile HashMap<String, InputSource> sources = new HashMap<>();
+    //concurrent since the sources are loaded in a startup
+    //thread while the gui might already be listing them
+    public volatile ConcurrentHashMap<String, InputSource> sources = new ConcurrentHashMap<>();
 
     public InputSourceLoader inputSourceLoader = new InputSourceLoader();
 
@@ -108,11 +111,9 @@ public class InputSourceManager {
             return;
         }
 
-        if (sources.containsKey(name)) return;
-
         inputSource.name = name;
 
-        sources.put(name, inputSource);
+        if (sources.putIfAbsent(name, inputSource) != null) return;
 
         if(inputSource.createdOn == -1)
             inputSource.createdOn = System.currentTimeMillis();
@@ -122,7 +123,8 @@ public class InputSourceManager {
             inputSourceLoader.saveInputSourcesToFile();
         }
 
-        if(eocvSim.visualizer.sourceSelectorPanel != null) {
+        //the sources list is filled once the gui finishes initializing
+        if(eocvSim.visualizer.hasFinishedInitializing()) {
             eocvSim.visualizer.sourceSelectorPanel.updateSourcesList();
         }
 
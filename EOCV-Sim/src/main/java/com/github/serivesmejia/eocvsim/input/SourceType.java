@@ -24,7 +24,9 @@
 package com.github.serivesmejia.eocvsim.input;
 
 import com.github.serivesmejia.eocvsim.input.source.CameraSource;
+import com.github.serivesmejia.eocvsim.input.source.ImageSequenceSource;
 import com.github.serivesmejia.eocvsim.input.source.ImageSource;
+import com.github.serivesmejia.eocvsim.input.source.RawCaptureSource;
 import com.github.serivesmejia.eocvsim.input.source.VideoSource;
 
 public enum SourceType {
@@ -32,6 +34,8 @@ public enum SourceType {
     IMAGE(ImageSource.class, "Image"),
     CAMERA(CameraSource.class, "Camera"),
     VIDEO(VideoSource.class, "Video"),
+    IMAGE_SEQUENCE(ImageSequenceSource.class, "Image Sequence"),
+    RAW_CAPTURE(RawCaptureSource.class, "Raw Capture"),
     UNKNOWN(null, "Unknown");
 
     public final Class<? extends InputSource> klazz;
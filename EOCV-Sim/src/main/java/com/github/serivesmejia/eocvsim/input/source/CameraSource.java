@@ -26,12 +26,13 @@ package com.github.serivesmejia.eocvsim.input.source;
 import com.github.serivesmejia.eocvsim.gui.Visualizer;
 import com.github.serivesmejia.eocvsim.input.InputSource;
 import com.github.serivesmejia.eocvsim.util.Log;
+import com.github.serivesmejia.eocvsim.util.image.MatPool;
 import com.google.gson.annotations.Expose;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.videoio.VideoCapture;
-import org.openftc.easyopencv.MatRecycler;
 
 public class CameraSource extends InputSource {
 
@@ -39,15 +40,20 @@ public class CameraSource extends InputSource {
     private final int webcamIndex;
     private transient VideoCapture camera = null;
 
-    private transient MatRecycler.RecyclableMat lastFramePaused = null;
-    private transient MatRecycler.RecyclableMat lastFrame = null;
+    private transient MatPool.PooledMat lastFramePaused = null;
+    private transient MatPool.PooledMat lastFrame = null;
+
+    //the frames are read and converted into these before being
+    //resized, since the source size might differ from the camera's
+    private transient Mat rawFrame = null;
+    private transient Mat rgbFrame = null;
 
     private transient boolean initialized = false;
 
     @Expose
     private volatile Size size;
 
-    private volatile transient MatRecycler matRecycler;
+    private volatile transient MatPool matPool;
 
     public CameraSource(int webcamIndex, Size size) {
         this.webcamIndex = webcamIndex;
@@ -68,20 +74,17 @@ public class CameraSource extends InputSource {
             return false;
         }
 
-        if (matRecycler == null) matRecycler = new MatRecycler(4);
-
-        MatRecycler.RecyclableMat newFrame = matRecycler.takeMat();
+        if (matPool == null) matPool = new MatPool("CameraSource", 4, MatPool.Policy.GROW);
+        if (rawFrame == null) rawFrame = new Mat();
+        if (rgbFrame == null) rgbFrame = new Mat();
 
-        camera.read(newFrame);
+        camera.read(rawFrame);
 
-        if (newFrame.empty()) {
+        if (rawFrame.empty()) {
             Log.error("CameraSource", "Unable to open camera " + webcamIndex + ", returned Mat was empty.");
-            newFrame.release();
             return false;
         }
 
-        matRecycler.returnMat(newFrame);
-
         return true;
 
     }
@@ -97,6 +100,14 @@ public class CameraSource extends InputSource {
         if(lastFramePaused != null && lastFramePaused.isCheckedOut())
             lastFramePaused.returnMat();
 
+        lastFrame = null;
+        lastFramePaused = null;
+
+        if (rawFrame != null) rawFrame.release();
+        if (rgbFrame != null) rgbFrame.release();
+
+        matPool.releaseAll();
+
         camera = null;
         initialized = false;
 
@@ -113,30 +124,14 @@ public class CameraSource extends InputSource {
         if (isPaused) {
             return lastFramePaused;
         } else if (lastFramePaused != null) {
-            lastFramePaused.release();
             lastFramePaused.returnMat();
             lastFramePaused = null;
         }
 
-        if (lastFrame == null) lastFrame = matRecycler.takeMat();
+        if (lastFrame == null) lastFrame = takeFrame();
         if (camera == null) return lastFrame;
 
-        MatRecycler.RecyclableMat newFrame = matRecycler.takeMat();
-
-        camera.read(newFrame);
-
-        if (newFrame.empty()) {
-            newFrame.returnMat();
-            return lastFrame;
-        }
-
-        if (size == null) size = lastFrame.size();
-
-        Imgproc.cvtColor(newFrame, lastFrame, Imgproc.COLOR_BGR2RGB);
-        Imgproc.resize(lastFrame, lastFrame, size, 0.0, 0.0, Imgproc.INTER_AREA);
-
-        newFrame.release();
-        newFrame.returnMat();
+        readFrameInto(lastFrame);
 
         return lastFrame;
 
@@ -145,13 +140,9 @@ public class CameraSource extends InputSource {
     @Override
     public void onPause() {
 
-        if (lastFrame != null) lastFrame.release();
-        if (lastFramePaused == null) lastFramePaused = matRecycler.takeMat();
-
-        camera.read(lastFramePaused);
+        if (lastFramePaused == null) lastFramePaused = takeFrame();
 
-        Imgproc.cvtColor(lastFramePaused, lastFramePaused, Imgproc.COLOR_BGR2RGB);
-        Imgproc.resize(lastFramePaused, lastFramePaused, size, 0.0, 0.0, Imgproc.INTER_AREA);
+        readFrameInto(lastFramePaused);
 
         update();
 
@@ -160,6 +151,24 @@ public class CameraSource extends InputSource {
 
     }
 
+    //takes a mat which already has the size of this source, if it's known
+    private MatPool.PooledMat takeFrame() {
+        if (size == null) return matPool.take(0, 0, CvType.CV_8UC3);
+        return matPool.take((int) size.height, (int) size.width, CvType.CV_8UC3);
+    }
+
+    private void readFrameInto(Mat frame) {
+        camera.read(rawFrame);
+        if (rawFrame.empty()) return;
+
+        if (size == null) size = rawFrame.size();
+
+        //resizing into the frame instead of in place,
+        //so that its buffer doesn't get reallocated
+        Imgproc.cvtColor(rawFrame, rgbFrame, Imgproc.COLOR_BGR2RGB);
+        Imgproc.resize(rgbFrame, frame, size, 0.0, 0.0, Imgproc.INTER_AREA);
+    }
+
     @Override
     public void onResume() {
 
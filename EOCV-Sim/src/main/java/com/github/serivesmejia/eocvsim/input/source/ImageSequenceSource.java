@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.input.source;
+
+import com.github.serivesmejia.eocvsim.input.InputSource;
+import com.github.serivesmejia.eocvsim.util.FileFilters;
+import com.github.serivesmejia.eocvsim.util.Log;
+import com.github.serivesmejia.eocvsim.util.image.MatPool;
+import com.google.gson.annotations.Expose;
+import com.qualcomm.robotcore.util.ElapsedTime;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ImageSequenceSource extends InputSource {
+
+    //how many images will be requested to the decoder
+    //threads ahead of the one currently being returned
+    public static final int DECODE_AHEAD_FRAMES = 8;
+    public static final int MAX_DECODER_THREADS = 4;
+
+    public enum PlaybackMode {
+        //every image is shown for 1/fps seconds
+        FIXED_RATE,
+        //a new image is returned on every update
+        AS_FAST_AS_POSSIBLE
+    }
+
+    //either a directory or a glob pattern
+    //for the file names, such as "dir/*.png"
+    @Expose
+    private final String path;
+
+    @Expose
+    private volatile Size size;
+
+    @Expose
+    private final PlaybackMode mode;
+    @Expose
+    private final double fps;
+    @Expose
+    private final boolean loop;
+
+    private transient File[] files = null;
+    private transient int nextFileIndex = 0;
+    //images in a row which couldn't be read, the sequence
+    //stops once a whole pass over the files has failed
+    private transient int consecutiveFailures = 0;
+
+    private transient ArrayDeque<Future<MatPool.PooledMat>> decodingFrames = null;
+    private transient ExecutorService decoderExecutor = null;
+
+    private transient MatPool.PooledMat lastFrame = null;
+    private transient ElapsedTime frameTimer = null;
+
+    private transient boolean initialized = false;
+    private transient boolean hasEnded = false;
+
+    private volatile transient MatPool matPool = null;
+
+    public ImageSequenceSource(String path, Size size, PlaybackMode mode, double fps, boolean loop) {
+        this.path = path;
+        this.size = size;
+        this.mode = mode;
+        this.fps = fps;
+        this.loop = loop;
+    }
+
+    public ImageSequenceSource(String path, Size size) {
+        this(path, size, PlaybackMode.AS_FAST_AS_POSSIBLE, 0, true);
+    }
+
+    @Override
+    public boolean init() {
+
+        if (initialized) return false;
+        initialized = true;
+
+        files = listImageFiles(path);
+
+        if (files.length == 0) {
+            Log.error("ImageSequenceSource", "No images were found in " + path);
+            return false;
+        }
+
+        //the size of the first image is used for all of
+        //them if none was specified, so that it doesn't
+        //change between frames of the same sequence
+        if (size == null) {
+            Mat first = Imgcodecs.imread(files[0].getAbsolutePath());
+
+            if (first.empty()) {
+                Log.error("ImageSequenceSource", "Unable to read image " + files[0].getAbsolutePath());
+                first.release();
+                return false;
+            }
+
+            size = first.size();
+            first.release();
+        }
+
+        //the frames being decoded, the last returned frame and a spare one
+        if (matPool == null) matPool = new MatPool("ImageSequenceSource", DECODE_AHEAD_FRAMES + 2, MatPool.Policy.GROW);
+        if (decodingFrames == null) decodingFrames = new ArrayDeque<>();
+        if (frameTimer == null) frameTimer = new ElapsedTime();
+
+        int threads = Math.max(1, Math.min(MAX_DECODER_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        AtomicInteger threadCount = new AtomicInteger(0);
+
+        decoderExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread t = new Thread(runnable, "ImageSequenceSource-Decoder-Thread-" + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+
+        nextFileIndex = 0;
+        consecutiveFailures = 0;
+        hasEnded = false;
+
+        decodeAhead();
+
+        return true;
+
+    }
+
+    @Override
+    public void reset() {
+
+        if (!initialized) return;
+
+        stopDecoding();
+
+        if (lastFrame != null && lastFrame.isCheckedOut())
+            lastFrame.returnMat();
+
+        lastFrame = null;
+
+        matPool.releaseAll();
+
+        files = null;
+        initialized = false;
+        hasEnded = false;
+
+    }
+
+    @Override
+    public void close() {
+
+        stopDecoding();
+
+        if (lastFrame != null && lastFrame.isCheckedOut()) {
+            lastFrame.returnMat();
+            lastFrame = null;
+        }
+
+    }
+
+    @Override
+    public Mat update() {
+
+        //the same frame is shown for as long as we're paused,
+        //the images that were decoded ahead are kept for later
+        if (isPaused || decoderExecutor == null) return lastFrame;
+
+        if (lastFrame != null && mode == PlaybackMode.FIXED_RATE && fps > 0
+                && frameTimer.seconds() < 1.0 / fps) {
+            return lastFrame;
+        }
+
+        MatPool.PooledMat newFrame = takeDecodedFrame();
+
+        if (newFrame != null) {
+            if (lastFrame != null) lastFrame.returnMat();
+            lastFrame = newFrame;
+
+            frameTimer.reset();
+        }
+
+        //decoding might have been stopped if none of the images could be read
+        if (decoderExecutor != null) decodeAhead();
+
+        return lastFrame;
+
+    }
+
+    @Override
+    public void onPause() {
+    }
+
+    @Override
+    public void onResume() {
+        if (frameTimer != null) frameTimer.reset();
+    }
+
+    @Override
+    public boolean hasEnded() {
+        return hasEnded;
+    }
+
+    //takes the next image in order, skipping the ones that
+    //couldn't be read. returns null when the sequence ended
+    private MatPool.PooledMat takeDecodedFrame() {
+        Future<MatPool.PooledMat> next;
+
+        while ((next = decodingFrames.poll()) != null) {
+            MatPool.PooledMat frame = null;
+
+            try {
+                frame = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                Log.error("ImageSequenceSource", "Uncaught exception thrown while decoding image", e.getCause());
+            }
+
+            if (frame != null) {
+                consecutiveFailures = 0;
+                return frame;
+            }
+
+            //a whole pass over the files failed, this would otherwise keep
+            //looping over them forever (e.g. they were deleted after init)
+            if (++consecutiveFailures >= files.length) {
+                Log.error("ImageSequenceSource", "None of the images in " + path + " could be read, stopping the sequence");
+
+                stopDecoding();
+                hasEnded = true;
+                return null;
+            }
+
+            //refill so that a long run of unreadable
+            //images doesn't make us return early
+            decodeAhead();
+        }
+
+        hasEnded = !loop;
+        return null;
+    }
+
+    //requests the next images to the decoder threads until
+    //there are DECODE_AHEAD_FRAMES of them being decoded
+    private void decodeAhead() {
+        while (decodingFrames.size() < DECODE_AHEAD_FRAMES) {
+            if (nextFileIndex >= files.length) {
+                if (!loop) return;
+                nextFileIndex = 0;
+            }
+
+            File file = files[nextFileIndex++];
+            decodingFrames.add(decoderExecutor.submit(() -> decode(file)));
+        }
+    }
+
+    //runs in a decoder thread, the frame is taken from the pool in here so that the
+    //tasks which are cancelled before they start don't hold on to one of its mats.
+    //returns null if the image couldn't be read
+    private MatPool.PooledMat decode(File file) {
+        Mat rawFrame = Imgcodecs.imread(file.getAbsolutePath());
+
+        if (rawFrame.empty()) {
+            Log.warn("ImageSequenceSource", "Unable to read image " + file.getAbsolutePath() + ", skipping");
+            rawFrame.release();
+            return null;
+        }
+
+        MatPool.PooledMat frame = matPool.take((int) size.height, (int) size.width, CvType.CV_8UC3);
+
+        try {
+            //the frame already has the final size, resizing into it and
+            //converting in place afterwards doesn't reallocate its buffer
+            Imgproc.resize(rawFrame, frame, size, 0.0, 0.0, Imgproc.INTER_AREA);
+            Imgproc.cvtColor(frame, frame, Imgproc.COLOR_BGR2RGB);
+
+            return frame;
+        } catch (RuntimeException ex) {
+            frame.returnMat();
+            throw ex;
+        } finally {
+            rawFrame.release();
+        }
+    }
+
+    private void stopDecoding() {
+        if (decoderExecutor != null) {
+            //shutdownNow() only drains the queue, the tasks which never started are
+            //cancelled so that waiting on their futures down below doesn't block forever.
+            //they're the same FutureTasks that submit() returned to decodeAhead()
+            for (Runnable notStarted : decoderExecutor.shutdownNow()) {
+                if (notStarted instanceof Future) ((Future<?>) notStarted).cancel(false);
+            }
+
+            decoderExecutor = null;
+        }
+
+        if (decodingFrames == null) return;
+
+        //wait for the frames which were already being decoded,
+        //in order to hand their mats back to the pool
+        Future<MatPool.PooledMat> next;
+
+        while ((next = decodingFrames.poll()) != null) {
+            if (next.isCancelled()) continue;
+
+            try {
+                MatPool.PooledMat frame = next.get();
+                if (frame != null) frame.returnMat();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ignored) { }
+        }
+    }
+
+    public static File[] listImageFiles(String path) {
+        File file = new File(path);
+
+        File dir;
+        PathMatcher matcher = null;
+
+        if (file.isDirectory()) {
+            dir = file;
+        } else {
+            dir = file.getAbsoluteFile().getParentFile();
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + file.getName());
+        }
+
+        File[] dirFiles = dir != null ? dir.listFiles() : null;
+        if (dirFiles == null) return new File[0];
+
+        ArrayList<File> images = new ArrayList<>();
+
+        for (File f : dirFiles) {
+            if (!f.isFile()) continue;
+
+            //the glob might match other files in the directory too
+            if (matcher != null && !matcher.matches(Paths.get(f.getName()))) continue;
+
+            if (FileFilters.imagesFilter.accept(f)) images.add(f);
+        }
+
+        File[] result = images.toArray(new File[0]);
+        Arrays.sort(result);
+
+        return result;
+    }
+
+    @Override
+    protected InputSource internalCloneSource() {
+        return new ImageSequenceSource(path, size, mode, fps, loop);
+    }
+
+    @Override
+    public String toString() {
+        return "ImageSequenceSource(" + path + ", " + (size != null ? size.toString() : "null") + ", " + mode + ")";
+    }
+
+}
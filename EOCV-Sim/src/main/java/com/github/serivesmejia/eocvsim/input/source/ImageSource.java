@@ -24,12 +24,14 @@
 package com.github.serivesmejia.eocvsim.input.source;
 
 import com.github.serivesmejia.eocvsim.input.InputSource;
+import com.github.serivesmejia.eocvsim.util.image.DecodedImageCache;
+import com.github.serivesmejia.eocvsim.util.image.MatPool;
 import com.google.gson.annotations.Expose;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
-import org.openftc.easyopencv.MatRecycler;
 
 public class ImageSource extends InputSource {
 
@@ -38,12 +40,12 @@ public class ImageSource extends InputSource {
     @Expose
     private volatile Size size;
 
-    private volatile transient MatRecycler.RecyclableMat img;
-    private volatile transient MatRecycler.RecyclableMat lastCloneTo;
+    private volatile transient MatPool.PooledMat img;
+    private volatile transient MatPool.PooledMat lastCloneTo;
 
     private volatile transient boolean initialized = false;
 
-    private volatile transient MatRecycler matRecycler = new MatRecycler(2);
+    private volatile transient MatPool matPool = new MatPool("ImageSource", 2, MatPool.Policy.GROW);
 
     public ImageSource(String imgPath) {
         this(imgPath, null);
@@ -60,7 +62,7 @@ public class ImageSource extends InputSource {
         if (initialized) return false;
         initialized = true;
 
-        if (matRecycler == null) matRecycler = new MatRecycler(2);
+        if (matPool == null) matPool = new MatPool("ImageSource", 2, MatPool.Policy.GROW);
 
         readImage();
 
@@ -92,7 +94,7 @@ public class ImageSource extends InputSource {
             img = null;
         }
 
-        matRecycler.releaseAll();
+        matPool.releaseAll();
 
         initialized = false;
 
@@ -101,7 +103,7 @@ public class ImageSource extends InputSource {
     public void close() {
 
         if (img != null) {
-            matRecycler.returnMat(img);
+            img.returnMat();
             img = null;
         }
 
@@ -110,41 +112,58 @@ public class ImageSource extends InputSource {
             lastCloneTo = null;
         }
 
-        matRecycler.releaseAll();
+        matPool.releaseAll();
 
     }
 
     public void readImage() {
 
-        Mat readMat = Imgcodecs.imread(this.imgPath);
+        if (img == null && this.size != null) {
+            img = matPool.take((int) this.size.height, (int) this.size.width, CvType.CV_8UC3);
+        }
 
-        if (img == null) img = matRecycler.takeMat();
+        //skip decoding if we've already read this image with the same size
+        //(e.g when switching back and forth between sources)
+        if (img != null && DecodedImageCache.getShared().copyTo(imgPath, this.size, img)) {
+            return;
+        }
+
+        Mat readMat = Imgcodecs.imread(this.imgPath);
 
         if (readMat.empty()) {
+            //the pooled mat taken for the cache lookup holds no image,
+            //give it back so that init() reports the source as failed
+            if (img != null) {
+                img.returnMat();
+                img = null;
+            }
+
+            readMat.release();
             return;
         }
 
-        readMat.copyTo(img);
-        readMat.release();
+        if (this.size == null) this.size = readMat.size();
+        if (img == null) img = matPool.take((int) this.size.height, (int) this.size.width, readMat.type());
 
-        if (this.size != null) {
-            Imgproc.resize(img, img, this.size, 0.0, 0.0, Imgproc.INTER_AREA);
-        } else {
-            this.size = img.size();
-        }
+        //resizing into the mat which already has the final size and converting
+        //in place afterwards, so that its buffer isn't reallocated on the way
+        Imgproc.resize(readMat, img, this.size, 0.0, 0.0, Imgproc.INTER_AREA);
+        readMat.release();
 
         Imgproc.cvtColor(img, img, Imgproc.COLOR_BGR2RGB);
 
+        DecodedImageCache.getShared().put(imgPath, img);
+
     }
 
     @Override
     public Mat update() {
 
         if (isPaused) return lastCloneTo;
-        if (lastCloneTo == null) lastCloneTo = matRecycler.takeMat();
-
         if (img == null) return null;
 
+        if (lastCloneTo == null) lastCloneTo = matPool.take(img);
+
         img.copyTo(lastCloneTo);
 
         return lastCloneTo;
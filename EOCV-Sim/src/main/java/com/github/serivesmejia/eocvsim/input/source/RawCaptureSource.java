@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.input.source;
+
+import com.github.serivesmejia.eocvsim.input.InputSource;
+import com.github.serivesmejia.eocvsim.output.RawCaptureWriter;
+import com.github.serivesmejia.eocvsim.util.Log;
+import com.google.gson.annotations.Expose;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Replays a file written by RawCaptureWriter. The file is memory mapped and
+ * uncompressed frames are handed out as mats that point to the mapped data,
+ * so there's no decoding involved and the replayed frames are bit-exact
+ */
+public class RawCaptureSource extends InputSource {
+
+    //a single MappedByteBuffer can't be bigger than this
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    @Expose
+    private final String capturePath;
+
+    private transient FileChannel channel = null;
+    private transient MappedByteBuffer[] segments = null;
+    private transient ArrayList<Frame> frames = null;
+
+    private transient int nextFrame = 0;
+    private transient long clockOffsetNanos = 0;
+
+    private transient Mat lastFrame = null;
+    private transient Mat decodedMat = null;
+
+    private transient Inflater inflater = null;
+    private transient byte[] deflatedBytes = null;
+    private transient byte[] inflatedBytes = null;
+
+    private transient boolean initialized = false;
+    private transient boolean hasEnded = false;
+
+    //captures loop by default and wait for the time between frames that there was
+    //when capturing. sources which should be read only once, frame by frame (e.g when
+    //batch processing in headless mode) can turn these on. they have to default to
+    //false since gson doesn't run the field initializers of the loaded sources
+    public transient boolean playOnce = false;
+    public transient boolean ignoreTimestamps = false;
+
+    public RawCaptureSource(String capturePath) {
+        this.capturePath = capturePath;
+    }
+
+    @Override
+    public boolean init() {
+
+        if (initialized) return false;
+        initialized = true;
+
+        try {
+            channel = FileChannel.open(Paths.get(capturePath), StandardOpenOption.READ);
+
+            if (!readFileHeader()) {
+                Log.error("RawCaptureSource", capturePath + " is not a valid raw capture file");
+                return false;
+            }
+
+            indexFrames();
+        } catch (IOException e) {
+            Log.error("RawCaptureSource", "Unable to open raw capture " + capturePath, e);
+            return false;
+        }
+
+        if (frames.isEmpty()) {
+            Log.error("RawCaptureSource", "Raw capture " + capturePath + " doesn't have any frames");
+            return false;
+        }
+
+        if (decodedMat == null) decodedMat = new Mat();
+
+        nextFrame = 0;
+        hasEnded = false;
+
+        return true;
+
+    }
+
+    @Override
+    public void reset() {
+
+        if (!initialized) return;
+
+        close();
+
+        nextFrame = 0;
+        initialized = false;
+        hasEnded = false;
+
+    }
+
+    @Override
+    public void close() {
+
+        //the last frame might point to the mapped file,
+        //so it has to be released before unmapping it
+        releaseLastFrame();
+        lastFrame = null;
+
+        if (decodedMat != null) {
+            decodedMat.release();
+            decodedMat = null;
+        }
+
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+
+        segments = null;
+        frames = null;
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) { }
+            channel = null;
+        }
+
+    }
+
+    @Override
+    public Mat update() {
+
+        if (isPaused || frames == null) return lastFrame;
+
+        if (nextFrame >= frames.size()) {
+            if (playOnce) {
+                hasEnded = true;
+                return lastFrame;
+            }
+
+            nextFrame = 0;
+        }
+
+        Frame frame = frames.get(nextFrame);
+
+        if (nextFrame == 0) {
+            clockOffsetNanos = System.nanoTime() - frame.timestampNanos;
+        } else if (!ignoreTimestamps && System.nanoTime() - clockOffsetNanos < frame.timestampNanos) {
+            return lastFrame; //not yet, keep showing the current frame
+        }
+
+        try {
+            readFrame(frame);
+            nextFrame++;
+        } catch (DataFormatException e) {
+            Log.error("RawCaptureSource", "Frame " + nextFrame + " of " + capturePath + " is corrupted, skipping", e);
+            nextFrame++;
+        }
+
+        return lastFrame;
+
+    }
+
+    @Override
+    public void onPause() {
+    }
+
+    @Override
+    public void onResume() {
+        //continue from the current frame as if no time had passed
+        if (frames != null && nextFrame > 0 && nextFrame <= frames.size()) {
+            clockOffsetNanos = System.nanoTime() - frames.get(nextFrame - 1).timestampNanos;
+        }
+    }
+
+    @Override
+    public boolean hasEnded() {
+        return hasEnded;
+    }
+
+    /**
+     * @return the amount of frames in the capture, 0 if it wasn't initialized
+     */
+    public int getFrameCount() {
+        return frames != null ? frames.size() : 0;
+    }
+
+    /**
+     * @return the timestamp the given frame was captured with
+     */
+    public long getFrameTimestampNanos(int index) {
+        return frames.get(index).timestampNanos;
+    }
+
+    private void readFrame(Frame frame) throws DataFormatException {
+        ByteBuffer data = segments[frame.segment].duplicate();
+        data.position(frame.dataOffset);
+        data.limit(frame.dataOffset + (int) frame.dataLength);
+
+        if ((frame.flags & RawCaptureWriter.FLAG_DEFLATED) == 0) {
+            releaseLastFrame();
+
+            //points directly to the mapped file, no copies
+            lastFrame = new Mat(frame.rows, frame.cols, frame.type, data.slice());
+            return;
+        }
+
+        if (deflatedBytes == null || deflatedBytes.length < frame.dataLength) deflatedBytes = new byte[(int) frame.dataLength];
+        data.get(deflatedBytes, 0, (int) frame.dataLength);
+
+        if (inflater == null) inflater = new Inflater();
+        inflater.reset();
+        inflater.setInput(deflatedBytes, 0, (int) frame.dataLength);
+
+        decodedMat.create(frame.rows, frame.cols, frame.type);
+
+        int inflatedLength = (int) (decodedMat.total() * decodedMat.elemSize());
+        if (inflatedBytes == null || inflatedBytes.length < inflatedLength) inflatedBytes = new byte[inflatedLength];
+
+        int read = 0;
+        while (read < inflatedLength && !inflater.finished()) {
+            int n = inflater.inflate(inflatedBytes, read, inflatedLength - read);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+            read += n;
+        }
+
+        if (read != inflatedLength) throw new DataFormatException("Expected " + inflatedLength + " bytes, got " + read);
+
+        decodedMat.put(0, 0, inflatedBytes);
+
+        releaseLastFrame();
+        lastFrame = decodedMat;
+    }
+
+    private void releaseLastFrame() {
+        if (lastFrame != null && lastFrame != decodedMat) lastFrame.release();
+    }
+
+    private boolean readFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RawCaptureWriter.FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (readFully(header, 0) < RawCaptureWriter.FILE_HEADER_SIZE) return false;
+
+        byte[] magic = new byte[RawCaptureWriter.MAGIC.length];
+        header.get(magic);
+
+        if (!Arrays.equals(magic, RawCaptureWriter.MAGIC)) return false;
+
+        int version = header.getInt();
+        if (version > RawCaptureWriter.VERSION) {
+            Log.warn("RawCaptureSource", "Raw capture " + capturePath + " is from a newer version (" + version + ")");
+            return false;
+        }
+
+        return true;
+    }
+
+    //reads every frame header to know where each frame is, and maps the
+    //file in as few segments as possible without splitting any frame
+    private void indexFrames() throws IOException {
+        frames = new ArrayList<>();
+
+        ArrayList<MappedByteBuffer> mappedSegments = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(RawCaptureWriter.FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        long fileSize = channel.size();
+        long position = RawCaptureWriter.FILE_HEADER_SIZE;
+        long segmentStart = position;
+
+        while (position + RawCaptureWriter.FRAME_HEADER_SIZE <= fileSize) {
+            header.clear();
+            if (readFully(header, position) < RawCaptureWriter.FRAME_HEADER_SIZE) break;
+
+            Frame frame = new Frame();
+            frame.timestampNanos = header.getLong();
+            frame.rows = header.getInt();
+            frame.cols = header.getInt();
+            frame.type = header.getInt();
+            frame.flags = header.getInt();
+            frame.dataLength = header.getLong();
+
+            long frameEnd = position + RawCaptureWriter.FRAME_HEADER_SIZE + frame.dataLength;
+
+            //the capture was probably interrupted while writing this frame
+            if (frame.dataLength < 0 || frameEnd > fileSize) {
+                Log.warn("RawCaptureSource", "Raw capture " + capturePath + " is truncated after " + frames.size() + " frame(s)");
+                break;
+            }
+
+            if (frameEnd - segmentStart > MAX_SEGMENT_SIZE) {
+                mappedSegments.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, position - segmentStart));
+                segmentStart = position;
+            }
+
+            frame.segment = mappedSegments.size();
+            frame.dataOffset = (int) (position + RawCaptureWriter.FRAME_HEADER_SIZE - segmentStart);
+
+            frames.add(frame);
+            position = frameEnd;
+        }
+
+        if (position > segmentStart) {
+            mappedSegments.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, position - segmentStart));
+        }
+
+        segments = mappedSegments.toArray(new MappedByteBuffer[0]);
+    }
+
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) break;
+            total += read;
+        }
+
+        buffer.flip();
+        return total;
+    }
+
+    @Override
+    protected InputSource internalCloneSource() {
+        return new RawCaptureSource(capturePath);
+    }
+
+    @Override
+    public String toString() {
+        return "RawCaptureSource(" + capturePath + ")";
+    }
+
+    private static class Frame {
+        long timestampNanos;
+        int rows, cols, type, flags;
+        long dataLength;
+
+        int segment;
+        int dataOffset;
+    }
+
+}
@@ -26,35 +26,62 @@ package com.github.serivesmejia.eocvsim.input.source;
 import com.github.serivesmejia.eocvsim.gui.Visualizer;
 import com.github.serivesmejia.eocvsim.input.InputSource;
 import com.github.serivesmejia.eocvsim.util.Log;
+import com.github.serivesmejia.eocvsim.util.image.MatPool;
 import com.google.gson.annotations.Expose;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.videoio.VideoCapture;
 import org.opencv.videoio.Videoio;
-import org.openftc.easyopencv.MatRecycler;
 
-import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 public class VideoSource extends InputSource {
 
+    //how many frames the decoder thread will have
+    //ready (converted and resized) ahead of time
+    public static final int DECODE_AHEAD_FRAMES = 4;
+
+    //how long update() waits for the decoder before showing the last frame again
+    public static final long FRAME_WAIT_TIMEOUT_MS = 500;
+
+    //empty reads in a row after which the decoder gives up, since a
+    //video which ended returns a frame again right after seeking back
+    public static final int MAX_CONSECUTIVE_EMPTY_READS = 3;
+    public static final long EMPTY_READ_BACKOFF_MS = 50;
+
     @Expose
     private final String videoPath;
 
     private transient VideoCapture video = null;
 
-    private transient MatRecycler.RecyclableMat lastFramePaused = null;
-    private transient MatRecycler.RecyclableMat lastFrame = null;
+    private transient MatPool.PooledMat lastFramePaused = null;
+    private transient MatPool.PooledMat lastFrame = null;
 
     private transient boolean initialized = false;
 
     @Expose
     private volatile Size size;
 
-    private volatile transient MatRecycler matRecycler = null;
+    private volatile transient MatPool matPool = null;
 
     private transient double lastFramePosition = 0;
 
+    //videos loop by default, sources which should be read only once (e.g when
+    //batch processing in headless mode) can turn this on. it has to default to
+    //false since gson doesn't run the field initializers of the loaded sources
+    public transient boolean readOnce = false;
+    private transient boolean hasEnded = false;
+
+    private transient ArrayBlockingQueue<MatPool.PooledMat> decodedFrames = null;
+    private transient Thread decoderThread = null;
+    private transient volatile boolean decoderFinished = false;
+    //frame which was already read when the decoder got stopped, it comes right
+    //after the ones in the queue. only touched once the decoder thread ended
+    private transient MatPool.PooledMat interruptedFrame = null;
+
     public VideoSource(String videoPath, Size size) {
         this.videoPath = videoPath;
         this.size = size;
@@ -74,10 +101,12 @@ public class VideoSource extends InputSource {
             return false;
         }
 
-        if (matRecycler == null) matRecycler = new MatRecycler(4);
+        //the decoded frames queue, the frame being decoded, the last returned frame
+        //and the paused frame. the decoder waits if all of them are checked out
+        if (matPool == null) matPool = new MatPool("VideoSource", DECODE_AHEAD_FRAMES + 3, MatPool.Policy.BLOCK);
+        if (decodedFrames == null) decodedFrames = new ArrayBlockingQueue<>(DECODE_AHEAD_FRAMES);
 
-        MatRecycler.RecyclableMat newFrame = matRecycler.takeMat();
-        newFrame.release();
+        Mat newFrame = new Mat();
 
         video.read(newFrame);
 
@@ -87,7 +116,11 @@ public class VideoSource extends InputSource {
         }
 
         newFrame.release();
-        matRecycler.returnMat(newFrame);
+
+        //rewind so that the frame we just read isn't skipped
+        video.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+
+        startDecoder();
 
         return true;
 
@@ -98,6 +131,9 @@ public class VideoSource extends InputSource {
 
         if (!initialized) return;
 
+        stopDecoder();
+        returnDecodedFrames();
+
         if (video != null && video.isOpened()) video.release();
 
         if(lastFrame != null && lastFrame.isCheckedOut())
@@ -105,16 +141,23 @@ public class VideoSource extends InputSource {
         if(lastFramePaused != null && lastFramePaused.isCheckedOut())
             lastFramePaused.returnMat();
 
-        matRecycler.releaseAll();
+        lastFrame = null;
+        lastFramePaused = null;
+
+        matPool.releaseAll();
 
         video = null;
         initialized = false;
+        hasEnded = false;
 
     }
 
     @Override
     public void close() {
 
+        stopDecoder();
+        returnDecodedFrames();
+
         if(video != null && video.isOpened()) video.release();
         if(lastFrame != null) lastFrame.returnMat();
 
@@ -135,29 +178,15 @@ public class VideoSource extends InputSource {
             lastFramePaused = null;
         }
 
-        if (lastFrame == null) lastFrame = matRecycler.takeMat();
         if (video == null) return lastFrame;
 
-        MatRecycler.RecyclableMat newFrame = matRecycler.takeMat();
-
-        video.read(newFrame);
-
-        //with videocapture for video files, when an empty mat is returned
-        //the most likely reason is that the video ended, so we set the
-        //playback position back to 0 for looping in here and start over
-        //in next update
-        if (newFrame.empty()) {
-            newFrame.returnMat();
-            video.set(Videoio.CAP_PROP_POS_FRAMES, 0);
-            return lastFrame;
-        }
-
-        if (size == null) size = lastFrame.size();
-
-        Imgproc.cvtColor(newFrame, lastFrame, Imgproc.COLOR_BGR2RGB);
-        Imgproc.resize(lastFrame, lastFrame, size, 0.0, 0.0, Imgproc.INTER_AREA);
+        //the frame is already converted and resized by the decoder
+        //thread, so we only have to hand it over in here
+        MatPool.PooledMat newFrame = takeDecodedFrame();
+        if (newFrame == null) return lastFrame;
 
-        matRecycler.returnMat(newFrame);
+        if (lastFrame != null) lastFrame.returnMat();
+        lastFrame = newFrame;
 
         return lastFrame;
 
@@ -166,17 +195,36 @@ public class VideoSource extends InputSource {
     @Override
     public void onPause() {
 
-        if (lastFrame != null) lastFrame.release();
-        if (lastFramePaused == null) lastFramePaused = matRecycler.takeMat();
+        stopDecoder();
 
-        video.read(lastFramePaused);
+        MatPool.PooledMat inFlightFrame = interruptedFrame;
+        interruptedFrame = null;
 
-        Imgproc.cvtColor(lastFramePaused, lastFramePaused, Imgproc.COLOR_BGR2RGB);
-        Imgproc.resize(lastFramePaused, lastFramePaused, size, 0.0, 0.0, Imgproc.INTER_AREA);
+        //the next frame which would've been returned is the one we'll
+        //keep showing, and the rest of the decoded ones are discarded
+        lastFramePaused = decodedFrames.poll();
 
-        update();
+        if (lastFramePaused == null) {
+            lastFramePaused = inFlightFrame;
+            inFlightFrame = null;
+        }
+
+        if (lastFramePaused == null) {
+            if (lastFrame != null) {
+                lastFramePaused = matPool.take(lastFrame);
+                lastFrame.copyTo(lastFramePaused);
+            } else {
+                lastFramePaused = matPool.take(0, 0, CvType.CV_8UC3);
+            }
+        }
 
-        lastFramePosition = video.get(Videoio.CAP_PROP_POS_FRAMES);
+        //the video is positioned after the last decoded frame, so go back as many
+        //frames as we are discarding now, including the one being decoded if any
+        int discardedFrames = decodedFrames.size() + (inFlightFrame != null ? 1 : 0);
+        lastFramePosition = Math.max(0, video.get(Videoio.CAP_PROP_POS_FRAMES) - discardedFrames);
+
+        returnDecodedFrames();
+        if (inFlightFrame != null) inFlightFrame.returnMat();
 
         video.release();
         video = null;
@@ -188,6 +236,137 @@ public class VideoSource extends InputSource {
         video = new VideoCapture();
         video.open(videoPath);
         video.set(Videoio.CAP_PROP_POS_FRAMES, lastFramePosition);
+
+        startDecoder();
+    }
+
+    @Override
+    public boolean hasEnded() {
+        return hasEnded;
+    }
+
+    private MatPool.PooledMat takeDecodedFrame() {
+        long deadline = System.currentTimeMillis() + FRAME_WAIT_TIMEOUT_MS;
+
+        try {
+            //when looping the last frame is shown again if the decoder is falling
+            //behind, but a video which is read only once waits for every frame
+            while (readOnce || System.currentTimeMillis() < deadline) {
+                MatPool.PooledMat frame = decodedFrames.poll(100, TimeUnit.MILLISECONDS);
+                if (frame != null) return frame;
+
+                //the decoder puts its last frame before finishing,
+                //so the queue must be checked again after the flag
+                if (decoderFinished && decodedFrames.isEmpty()) {
+                    hasEnded = readOnce;
+                    return null;
+                }
+            }
+
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void startDecoder() {
+        decoderFinished = false;
+
+        decoderThread = new Thread(this::decodeAhead, "VideoSource-Decoder-Thread");
+        decoderThread.setDaemon(true);
+        decoderThread.start();
+    }
+
+    private void stopDecoder() {
+        if (decoderThread == null) return;
+
+        decoderThread.interrupt();
+
+        try {
+            decoderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        decoderThread = null;
+    }
+
+    private void returnDecodedFrames() {
+        if (interruptedFrame != null) {
+            interruptedFrame.returnMat();
+            interruptedFrame = null;
+        }
+
+        if (decodedFrames == null) return;
+
+        MatPool.PooledMat frame;
+
+        while ((frame = decodedFrames.poll()) != null) {
+            frame.returnMat();
+        }
+    }
+
+    //runs in the decoder thread, reading and converting frames until
+    //the queue is full, then waiting for update() to take them
+    private void decodeAhead() {
+        Mat rawFrame = new Mat();
+        Mat rgbFrame = new Mat();
+
+        int emptyReads = 0;
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                video.read(rawFrame);
+
+                //with videocapture for video files, when an empty mat is returned
+                //the most likely reason is that the video ended, so we set the
+                //playback position back to 0 for looping in here and start over
+                if (rawFrame.empty()) {
+                    if (readOnce) break;
+
+                    //still empty after going back to the start, the video
+                    //can't be read past this point or it can't be seeked
+                    if (++emptyReads >= MAX_CONSECUTIVE_EMPTY_READS) {
+                        Log.warn("VideoSource", "Unable to read more frames from video " + videoPath + " after looping it, stopping playback");
+                        break;
+                    }
+
+                    if (emptyReads > 1) Thread.sleep(EMPTY_READ_BACKOFF_MS);
+
+                    video.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+                    continue;
+                }
+
+                emptyReads = 0;
+
+                if (size == null) size = rawFrame.size();
+
+                Imgproc.cvtColor(rawFrame, rgbFrame, Imgproc.COLOR_BGR2RGB);
+
+                //resizing into a mat which already has the final size, instead
+                //of in place, so that its buffer doesn't get reallocated
+                MatPool.PooledMat frame = matPool.take((int) size.height, (int) size.width, rgbFrame.type());
+                Imgproc.resize(rgbFrame, frame, size, 0.0, 0.0, Imgproc.INTER_AREA);
+
+                try {
+                    decodedFrames.put(frame);
+                } catch (InterruptedException e) {
+                    //the video is already past this frame, it's kept
+                    //so that pausing doesn't skip it (see onPause)
+                    interruptedFrame = frame;
+                    break;
+                }
+            }
+        } catch (InterruptedException ignored) {
+            //stopped while backing off
+        } catch (Exception ex) {
+            Log.error("VideoSource", "Uncaught exception thrown while decoding video " + videoPath, ex);
+        } finally {
+            rawFrame.release();
+            rgbFrame.release();
+            decoderFinished = true;
+        }
     }
 
     @Override
@@ -200,4 +379,4 @@ public class VideoSource extends InputSource {
         return "VideoSource(" + videoPath + ", " + (size != null ? size.toString() : "null") + ")";
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.output
+
+import com.github.serivesmejia.eocvsim.gui.util.MatPoster
+import com.github.serivesmejia.eocvsim.util.Log
+import org.opencv.core.Mat
+import java.io.File
+import java.io.IOException
+
+/**
+ * Captures the frames given to the pipeline into a raw capture file,
+ * with the same timestamps the pipeline output frames are posted with.
+ * No frame is ever dropped, if writing falls behind by MAX_QUEUED_FRAMES
+ * the thread posting the frames waits for the writer to catch up
+ */
+class RawCaptureSession(val file: File, compress: Boolean = false) {
+
+    companion object {
+        const val MAX_QUEUED_FRAMES = 30
+        //how long stop() waits for the queued frames to be written
+        const val STOP_TIMEOUT_MS = 10_000L
+    }
+
+    private val writer = RawCaptureWriter(file, compress)
+
+    val matPoster: MatPoster = MatPoster.createBlocking("RawCapture", MAX_QUEUED_FRAMES)
+
+    @Volatile var hasStopped = false
+        private set
+
+    val writtenFrames: Long
+        get() = writer.writtenFrames
+
+    val droppedFrames: Long
+        get() = matPoster.droppedFrames
+
+    init {
+        matPoster.addTimestampedPostable { mat, timestampNanos -> write(mat, timestampNanos) }
+    }
+
+    @Synchronized private fun write(mat: Mat, timestampNanos: Long) {
+        if(hasStopped) return
+
+        try {
+            writer.write(mat, timestampNanos)
+        } catch(ex: IOException) {
+            Log.error("RawCaptureSession", "Unable to write frame to ${file.absolutePath}", ex)
+        }
+    }
+
+    fun stop() {
+        if(hasStopped) return
+
+        //write the frames which are still queued before closing the file,
+        //outside of the lock since the poster thread needs it to write them
+        val allWritten = try {
+            matPoster.awaitPending(STOP_TIMEOUT_MS)
+        } catch(ignored: InterruptedException) {
+            Thread.currentThread().interrupt()
+            false
+        }
+
+        synchronized(this) {
+            if(hasStopped) return
+
+            matPoster.stop()
+            writer.close()
+
+            hasStopped = true
+        }
+
+        Log.info("RawCaptureSession", "Captured $writtenFrames frame(s) to ${file.absolutePath}")
+
+        if(!allWritten) {
+            Log.warn("RawCaptureSession", "Timed out while writing the queued frames, the capture is missing its last frame(s)")
+        }
+        if(droppedFrames > 0) {
+            Log.warn("RawCaptureSession", "$droppedFrames frame(s) were dropped from the capture")
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.output
+
+import org.opencv.core.Mat
+import java.io.Closeable
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.zip.Deflater
+
+/**
+ * Writes frames to a raw capture file, which can be replayed bit-exact
+ * with RawCaptureSource. The file is append-only, it starts with a
+ * FILE_HEADER_SIZE bytes header (MAGIC and VERSION) followed by frames,
+ * each one with a FRAME_HEADER_SIZE bytes header and the Mat bytes:
+ *
+ * long timestampNanos | int rows | int cols | int type | int flags | long dataLength | data
+ *
+ * All values are little endian. When FLAG_DEFLATED is set the data is
+ * compressed with Deflater, otherwise it's the continuous Mat data as is.
+ */
+class RawCaptureWriter(val file: File, val compress: Boolean = false) : Closeable {
+
+    companion object {
+        @JvmField val MAGIC = byteArrayOf('E'.toByte(), 'O'.toByte(), 'C'.toByte(), 'V'.toByte(), 'R'.toByte(), 'A'.toByte(), 'W'.toByte(), 0)
+        const val VERSION = 1
+
+        const val FILE_HEADER_SIZE = 16
+        const val FRAME_HEADER_SIZE = 32
+
+        const val FLAG_DEFLATED = 1
+
+        const val FILE_EXTENSION = "eocvraw"
+    }
+
+    private val channel = FileChannel.open(
+        file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+    )
+
+    private val headerBuffer = ByteBuffer.allocateDirect(FRAME_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+
+    //the mat data is copied into here by wrapping it as a mat, so that
+    //we don't need an intermediate java array for uncompressed frames
+    private var dataBuffer: ByteBuffer? = null
+    private var dataMat: Mat? = null
+
+    private var deflater: Deflater? = null
+    private var rawBytes = ByteArray(0)
+    private var deflatedBytes = ByteArray(0)
+
+    var writtenFrames = 0L
+        private set
+
+    init {
+        val fileHeader = ByteBuffer.allocate(FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+        fileHeader.put(MAGIC).putInt(VERSION).putInt(0).flip()
+
+        writeFully(fileHeader)
+    }
+
+    @Synchronized fun write(mat: Mat, timestampNanos: Long) {
+        val dataLength = mat.total() * mat.elemSize()
+
+        if(compress) {
+            writeDeflated(mat, dataLength.toInt(), timestampNanos)
+            return
+        }
+
+        val buffer = dataBufferFor(mat, dataLength.toInt())
+        mat.copyTo(dataMat)
+
+        writeHeader(mat, timestampNanos, 0, dataLength)
+
+        buffer.clear()
+        writeFully(buffer)
+
+        writtenFrames++
+    }
+
+    private fun writeDeflated(mat: Mat, dataLength: Int, timestampNanos: Long) {
+        if(rawBytes.size < dataLength) rawBytes = ByteArray(dataLength)
+        mat.get(0, 0, rawBytes)
+
+        val deflater = deflater ?: Deflater(Deflater.BEST_SPEED).also { deflater = it }
+        deflater.reset()
+        deflater.setInput(rawBytes, 0, dataLength)
+        deflater.finish()
+
+        var deflatedLength = 0
+
+        while(!deflater.finished()) {
+            if(deflatedLength == deflatedBytes.size) {
+                deflatedBytes = deflatedBytes.copyOf(maxOf(1024, deflatedBytes.size * 2))
+            }
+            deflatedLength += deflater.deflate(deflatedBytes, deflatedLength, deflatedBytes.size - deflatedLength)
+        }
+
+        writeHeader(mat, timestampNanos, FLAG_DEFLATED, deflatedLength.toLong())
+        writeFully(ByteBuffer.wrap(deflatedBytes, 0, deflatedLength))
+
+        writtenFrames++
+    }
+
+    private fun writeHeader(mat: Mat, timestampNanos: Long, flags: Int, dataLength: Long) {
+        headerBuffer.clear()
+        headerBuffer.putLong(timestampNanos)
+            .putInt(mat.rows()).putInt(mat.cols()).putInt(mat.type())
+            .putInt(flags).putLong(dataLength)
+        headerBuffer.flip()
+
+        writeFully(headerBuffer)
+    }
+
+    private fun dataBufferFor(mat: Mat, dataLength: Int): ByteBuffer {
+        val current = dataBuffer
+        val currentMat = dataMat
+
+        if(current != null && currentMat != null && current.capacity() == dataLength
+            && currentMat.rows() == mat.rows() && currentMat.cols() == mat.cols() && currentMat.type() == mat.type()) {
+            return current
+        }
+
+        currentMat?.release()
+
+        val buffer = ByteBuffer.allocateDirect(dataLength)
+        dataBuffer = buffer
+        dataMat = Mat(mat.rows(), mat.cols(), mat.type(), buffer)
+
+        return buffer
+    }
+
+    private fun writeFully(buffer: ByteBuffer) {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer)
+        }
+    }
+
+    @Synchronized override fun close() {
+        channel.force(false)
+        channel.close()
+
+        dataMat?.release()
+        deflater?.end()
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.output
+
+import com.github.serivesmejia.eocvsim.pipeline.PipelineManager
+import com.github.serivesmejia.eocvsim.util.Log
+import com.google.gson.Gson
+import com.google.gson.JsonObject
+import org.firstinspires.ftc.robotcore.external.Telemetry
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileWriter
+import java.io.IOException
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * Captures the telemetry items of every pipeline frame into an append only
+ * file, one record per item with the frame index, the capture timestamp,
+ * the caption and the value (keeping numbers and booleans typed).
+ *
+ * The file is either NDJSON (one JSON object per line) or CSV, depending on
+ * its extension. The items are read in the pipeline thread and written by
+ * a separate writer thread, so that the pipeline never waits for the disk.
+ *
+ * @param dropWhenFull whether to drop frames when the writer falls behind
+ *                     instead of waiting for it (for headless runs, which
+ *                     shouldn't lose any frame)
+ */
+class TelemetryCaptureSession @JvmOverloads constructor(
+    val file: File,
+    private val dropWhenFull: Boolean = true
+) {
+
+    companion object {
+        //how many frames can be waiting for the writer
+        const val WRITER_QUEUE_SIZE = 1024
+
+        @JvmField val FILE_EXTENSIONS = arrayOf("ndjson", "jsonl", "csv")
+
+        private const val TAG = "TelemetryCaptureSession"
+    }
+
+    enum class Format { NDJSON, CSV }
+
+    val format = if(file.extension.equals("csv", true)) Format.CSV else Format.NDJSON
+
+    private val writer = BufferedWriter(FileWriter(file))
+    private val gson = Gson()
+
+    private val writerQueue = ArrayBlockingQueue<CapturedFrame>(WRITER_QUEUE_SIZE)
+    private val writerThread = Thread(::runWriter, "TelemetryCapture-Writer-Thread")
+
+    @Volatile private var isWriterStopping = false
+
+    @Volatile var hasStopped = false
+        private set
+
+    //only touched from the pipeline thread
+    private var frameIndex = 0L
+    private var lastUpdateCount = -1L
+    private var firstTimestampNanos = -1L
+
+    val telemetryListener = PipelineManager.TelemetryListener(::capture)
+
+    @Volatile var writtenRecords = 0L
+        private set
+    @Volatile var droppedFrames = 0L
+        private set
+
+    init {
+        if(format == Format.CSV) {
+            writer.write("frame,timestamp,caption,value")
+            writer.newLine()
+        }
+
+        writerThread.isDaemon = true
+        writerThread.start()
+    }
+
+    /**
+     * Captures the items of the telemetry, if it was updated since
+     * the last call. Must be called once per processed frame, from
+     * the same thread, for the frame indexes to be right.
+     *
+     * @param captureNanos the time in which the input frame was captured, in the System.nanoTime() time base
+     */
+    fun capture(telemetry: Telemetry, captureNanos: Long) {
+        val currentFrame = frameIndex++
+        if(isWriterStopping) return
+
+        if(firstTimestampNanos < 0) firstTimestampNanos = captureNanos
+
+        //the pipeline didn't call telemetry.update() on this frame
+        val updateCount = telemetry.updateCount
+        if(updateCount == lastUpdateCount) return
+        lastUpdateCount = updateCount
+
+        val items = telemetry.lastItems
+        val records = ArrayList<Record>(items.size)
+
+        //the values are read right now since they might be
+        //produced by a func which depends on the pipeline state
+        for(item in items) {
+            when(item) {
+                is Telemetry.Item -> records.add(Record(item.caption, item.value))
+                is Telemetry.Line -> if(item.caption.isNotBlank()) records.add(Record(item.caption, null))
+            }
+        }
+
+        if(records.isEmpty()) return
+
+        val frame = CapturedFrame(currentFrame, (captureNanos - firstTimestampNanos) / 1e9, records)
+
+        if(dropWhenFull) {
+            if(!writerQueue.offer(frame)) droppedFrames++
+            return
+        }
+
+        //wait for the writer, unless it stopped because of an error
+        while(!writerQueue.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+            if(isWriterStopping) {
+                droppedFrames++
+                return
+            }
+        }
+    }
+
+    //runs in the writer thread, until the session is stopped
+    //and all of the queued frames have been written
+    private fun runWriter() {
+        try {
+            while(true) {
+                val frame = writerQueue.poll(100, TimeUnit.MILLISECONDS)
+
+                if(frame == null) {
+                    if(isWriterStopping) break
+                    continue
+                }
+
+                write(frame)
+            }
+        } catch(ex: InterruptedException) {
+        } catch(ex: IOException) {
+            isWriterStopping = true
+            Log.error(TAG, "Unable to write telemetry to ${file.absolutePath}", ex)
+        }
+    }
+
+    private fun write(frame: CapturedFrame) {
+        for(record in frame.records) {
+            when(format) {
+                Format.NDJSON -> {
+                    val json = JsonObject()
+                    json.addProperty("frame", frame.index)
+                    json.addProperty("timestamp", frame.timestamp)
+                    json.addProperty("caption", record.caption)
+
+                    when(val value = record.value) {
+                        is Number -> if(value.toDouble().isFinite()) {
+                            json.addProperty("value", value)
+                        } else json.addProperty("value", value.toString())
+                        is Boolean -> json.addProperty("value", value)
+                        null -> json.add("value", null)
+                        else -> json.addProperty("value", value.toString())
+                    }
+
+                    writer.write(gson.toJson(json))
+                }
+                Format.CSV -> {
+                    writer.write("${frame.index},${frame.timestamp},${csvEscape(record.caption)},")
+                    record.value?.let { writer.write(csvEscape(it.toString())) }
+                }
+            }
+
+            writer.newLine()
+            writtenRecords++
+        }
+    }
+
+    private fun csvEscape(str: String) = if(str.contains(',') || str.contains('"') || str.contains('\n')) {
+        "\"${str.replace("\"", "\"\"")}\""
+    } else str
+
+    /**
+     * Stops capturing, waiting for the writer to finish
+     * writing the frames it still has queued
+     */
+    @Synchronized fun stop() {
+        if(hasStopped) return
+
+        isWriterStopping = true
+        writerThread.join()
+
+        try {
+            writer.close()
+        } catch(ex: IOException) {
+            Log.error(TAG, "Unable to close ${file.absolutePath}", ex)
+        }
+
+        hasStopped = true
+
+        Log.info(TAG, "Captured $writtenRecords telemetry record(s) of $frameIndex frame(s) to ${file.absolutePath}, dropped $droppedFrames frame(s)")
+    }
+
+    private class Record(val caption: String, val value: Any?)
+    private class CapturedFrame(val index: Long, val timestamp: Double, val records: List<Record>)
+
+}
@@ -24,28 +24,73 @@
 package com.github.serivesmejia.eocvsim.output
 
 import com.github.serivesmejia.eocvsim.gui.util.MatPoster
+import com.github.serivesmejia.eocvsim.util.Log
 import com.github.serivesmejia.eocvsim.util.StrUtil
 import com.github.serivesmejia.eocvsim.util.extension.CvExt.aspectRatio
 import com.github.serivesmejia.eocvsim.util.extension.CvExt.clipTo
-import com.github.serivesmejia.eocvsim.util.fps.FpsCounter
+import com.github.serivesmejia.eocvsim.util.image.MatPool
 import org.opencv.core.*
 import org.opencv.imgproc.Imgproc
 import org.opencv.videoio.VideoWriter
 import java.io.File
 import java.nio.file.Files
 import java.nio.file.StandardCopyOption
-import kotlin.math.roundToInt
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+import kotlin.math.roundToLong
 
 class VideoRecordingSession(val videoFps: Double = 30.0, val videoSize: Size = Size(320.0, 240.0), val isFramesRgb: Boolean = true) {
 
+    companion object {
+        //how many converted frames can be waiting for the encoder
+        //before we start dropping them, about a second of video
+        const val ENCODER_QUEUE_SIZE = 30
+    }
+
     private val videoWriter = VideoWriter()
     private val tempFile = File.createTempFile(StrUtil.random(), ".avi")
 
-    @Volatile private var videoMat: Mat? = null
+    //the posted mats are shared, so we work on these instead
+    private val bgrMat = Mat()
+    private val scaledMat = Mat()
+
+    //frames are converted in the poster thread and written in the encoder
+    //thread, so that a slow write (i.e disk stalls) doesn't hold the poster
+    private val encoderMatPool = MatPool("VideoRec-Encoder", ENCODER_QUEUE_SIZE + 2, MatPool.Policy.GROW)
+    private val encoderQueue = ArrayBlockingQueue<EncoderFrame>(ENCODER_QUEUE_SIZE)
+    private val encoderThread = Thread(::runEncoder, "VideoRec-Encoder-Thread")
+
+    @Volatile private var isEncoderStopping = false
 
     val matPoster = MatPoster("VideoRec", videoFps.toInt())
 
-    private val fpsCounter = FpsCounter()
+    //the frame which is waiting for the next one to be captured, to
+    //know how many frames of the video it has to be shown for
+    private var pendingFrame: EncoderFrame? = null
+
+    /**
+     * Capture timestamp (in the System.nanoTime() time base) of the first
+     * frame of the video. The frame n of the video is the last one captured
+     * before firstFrameTimestampNanos + n / videoFps seconds, so that the
+     * video can be lined up with anything else timestamped in the same base
+     */
+    @Volatile var firstFrameTimestampNanos = -1L
+        private set
+
+    //frames of the video file, including the ones repeated
+    //to fill the time between two frames that were captured
+    @Volatile var writtenFrames = 0L
+        private set
+    //frames which were dropped because the encoder queue was full
+    @Volatile var encoderOverflowFrames = 0L
+        private set
+
+    //dropped either before or after being converted
+    val droppedFrames: Long
+        get() = matPoster.droppedFrames + encoderOverflowFrames
+
+    val encoderQueueSize: Int
+        get() = encoderQueue.size
 
     @Volatile var hasStarted = false
         private set
@@ -58,17 +103,34 @@ class VideoRecordingSession(val videoFps: Double = 30.0, val videoSize: Size = S
         }
 
     init {
-        matPoster.addPostable { postMat(it) }
+        matPoster.addTimestampedPostable { mat, timestampNanos -> postMat(mat, timestampNanos) }
+        encoderThread.isDaemon = true
     }
 
     fun startRecordingSession() {
         videoWriter.open(tempFile.toString(), VideoWriter.fourcc('M', 'J', 'P', 'G'), videoFps, videoSize)
+        encoderThread.start()
         hasStarted = true;
     }
 
-    fun stopRecordingSession() {
-        videoWriter.release(); videoMat?.release(); matPoster.stop()
+    @Synchronized fun stopRecordingSession() {
+        matPoster.stop()
+
+        //let the encoder write the frames it still has queued
+        isEncoderStopping = true
+        encoderThread.join()
+
+        videoWriter.release()
+
+        while(true) {
+            (encoderQueue.poll() ?: break).mat.returnMat()
+        }
+        encoderMatPool.releaseAll()
+
+        bgrMat.release(); scaledMat.release()
         hasStopped = true
+
+        Log.info("VideoRecordingSession", "Wrote $writtenFrames frame(s), dropped ${matPoster.droppedFrames} before and $encoderOverflowFrames after conversion")
     }
 
     fun saveTo(file: File) {
@@ -87,33 +149,52 @@ class VideoRecordingSession(val videoFps: Double = 30.0, val videoSize: Size = S
         matPoster.post(inputMat)
     }
 
-    @Synchronized fun postMat(inputMat: Mat) {
-        if(!videoWriter.isOpened) return
+    @JvmOverloads
+    @Synchronized fun postMat(inputMat: Mat, timestampNanos: Long = System.nanoTime()) {
+        if(!videoWriter.isOpened || isEncoderStopping) return
 
-        if(videoMat == null)
-            videoMat = Mat(videoSize, inputMat.type())
-        else
-            videoMat!!.setTo(Scalar(0.0, 0.0, 0.0))
+        //the encoder is falling behind, drop this frame instead of
+        //blocking so that the frames that follow aren't delayed too
+        val videoMat = if(encoderQueue.remainingCapacity() > 0) {
+            encoderMatPool.tryTake(videoSize.height.toInt(), videoSize.width.toInt(), inputMat.type())
+        } else null
 
-        //we need BGR frames
-        if(isFramesRgb) {
-            Imgproc.cvtColor(inputMat, inputMat, Imgproc.COLOR_RGB2BGR)
+        if(videoMat == null) {
+            encoderOverflowFrames++
+            return
         }
 
-        if(inputMat.size() == videoSize) { //nice, the mat size is the exact same as the video size
-            compensateFpsWrite(inputMat, fpsCounter.fps.toDouble(), videoFps)
+        try {
+            convertFrame(inputMat, videoMat)
+        } catch(ex: Exception) {
+            videoMat.returnMat()
+            throw ex
+        }
+
+        encoderQueue.offer(EncoderFrame(videoMat, timestampNanos))
+    }
+
+    //resizes and letterboxes the input mat into the video size
+    private fun convertFrame(inputMat: Mat, videoMat: Mat) {
+        //we need BGR frames
+        val frameMat = if(isFramesRgb) {
+            Imgproc.cvtColor(inputMat, bgrMat, Imgproc.COLOR_RGB2BGR)
+            bgrMat
+        } else inputMat
+
+        if(frameMat.size() == videoSize) { //nice, the mat size is the exact same as the video size
+            frameMat.copyTo(videoMat)
         } else { //uh oh, this might get a bit harder here...
             val videoR = videoSize.aspectRatio()
-            val inputR = inputMat.aspectRatio()
+            val inputR = frameMat.aspectRatio()
 
             //ok, we have the same aspect ratio, we can just scale to the required size
             if(videoR == inputR) {
-                Imgproc.resize(inputMat, videoMat, videoSize, 0.0, 0.0, Imgproc.INTER_AREA)
-                compensateFpsWrite(videoMat!!, fpsCounter.fps.toDouble(), videoFps)
+                Imgproc.resize(frameMat, videoMat, videoSize, 0.0, 0.0, Imgproc.INTER_AREA)
             } else { //hmm, not the same aspect ratio, we'll need to do some fancy stuff here...
 
-                val inputW = inputMat.size().width
-                val inputH = inputMat.size().height
+                val inputW = frameMat.size().width
+                val inputH = frameMat.size().height
 
                 val widthRatio = videoSize.width / inputW
                 val heightRatio = videoSize.height / inputH
@@ -126,36 +207,82 @@ class VideoRecordingSession(val videoFps: Double = 30.0, val videoSize: Size = S
                 val xOffset = (videoSize.width - newSize.width) / 2
                 val yOffset = (videoSize.height - newSize.height) / 2
 
-                Imgproc.resize(inputMat, inputMat, newSize, 0.0, 0.0, Imgproc.INTER_AREA)
+                Imgproc.resize(frameMat, scaledMat, newSize, 0.0, 0.0, Imgproc.INTER_AREA)
 
                 //get submat of the exact required size and offset position from the "videoMat",
                 //which has the user-defined size of the current video.
-                val submat = videoMat!!.submat(Rect(Point(xOffset, yOffset), newSize))
+                videoMat.create(videoSize, frameMat.type())
+                videoMat.setTo(Scalar(0.0, 0.0, 0.0))
+
+                val submat = videoMat.submat(Rect(Point(xOffset, yOffset), newSize))
 
                 //then we copy our adjusted mat into the gotten submat. since a submat is just
                 //a reference to the parent mat, when we copy here our data will be actually
                 //copied to the actual mat, and so our new mat will be of the correct size and
                 //centered with the required offset
-                inputMat.copyTo(submat);
+                scaledMat.copyTo(submat);
+                submat.release()
+            }
+        }
+    }
 
-                compensateFpsWrite(videoMat!!, fpsCounter.fps.toDouble(), videoFps)
+    //runs in the encoder thread, writing the converted frames in order until
+    //the session is stopped and there are no more frames left in the queue
+    private fun runEncoder() {
+        try {
+            while(true) {
+                val frame = encoderQueue.poll(100, TimeUnit.MILLISECONDS)
 
+                if(frame == null) {
+                    if(isEncoderStopping) break
+                    continue
+                }
+
+                encode(frame)
             }
 
-            fpsCounter.update()
+            //the last frame is shown for a single video frame, since
+            //there's no next one that tells us for how long it was
+            pendingFrame?.let {
+                writeUntil(it.mat, maxOf(writtenFrames, frameIndexOf(it.timestampNanos)) + 1)
+            }
+        } catch(ex: InterruptedException) {
+        } catch(ex: Exception) {
+            Log.error("VideoRecordingSession", "Uncaught exception thrown while encoding video", ex)
+        } finally {
+            pendingFrame?.mat?.returnMat()
+            pendingFrame = null
         }
     }
 
-    //compensating for variable fps, we write the same mat multiple
-    //times so that our video stays in sync with the correct speed.
-    @Synchronized private fun compensateFpsWrite(mat: Mat, currentFps: Double, targetFps: Double) {
-        if (currentFps < targetFps && currentFps > 0) {
-            repeat((targetFps / currentFps).roundToInt()) {
-                videoWriter.write(mat)
+    //the video has a constant frame rate, so instead of writing each frame once we write
+    //the previous one for every video frame until the time in which this one was captured.
+    //frames captured faster than the video fps replace each other within the same video frame
+    private fun encode(frame: EncoderFrame) {
+        if(firstFrameTimestampNanos < 0) firstFrameTimestampNanos = frame.timestampNanos
+
+        val previousFrame = pendingFrame
+        pendingFrame = frame
+
+        previousFrame?.let {
+            try {
+                writeUntil(it.mat, frameIndexOf(frame.timestampNanos))
+            } finally {
+                it.mat.returnMat()
             }
-        } else {
+        }
+    }
+
+    private fun writeUntil(mat: Mat, frameIndex: Long) {
+        while(writtenFrames < frameIndex) {
             videoWriter.write(mat)
+            writtenFrames++
         }
     }
 
+    private fun frameIndexOf(timestampNanos: Long) =
+        ((timestampNanos - firstFrameTimestampNanos) * videoFps / 1_000_000_000.0).roundToLong()
+
+    private class EncoderFrame(val mat: MatPool.PooledMat, val timestampNanos: Long)
+
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.pipeline
+
+import org.openftc.easyopencv.OpenCvPipeline
+
+/**
+ * A pipeline found by the PipelineScanner, known only by its class name
+ * until it's actually needed. Loading the class runs its static initializers,
+ * which might be slow (or throw), so it is deferred until the pipeline is
+ * selected for the first time instead of doing it for every pipeline on startup.
+ */
+class LazyPipelineClass private constructor(val name: String,
+                                            @Volatile private var loadedClass: Class<out OpenCvPipeline>?) {
+
+    constructor(name: String) : this(name, null)
+    constructor(clazz: Class<out OpenCvPipeline>) : this(clazz.name, clazz)
+
+    //the binary name contains the enclosing class(es) of nested classes after a '$'
+    val simpleName = name.substringAfterLast('.').substringAfterLast('$')
+
+    val isLoaded get() = loadedClass != null
+
+    /**
+     * Loads (and initializes) the pipeline class the first time it's called
+     * @throws ClassNotFoundException if the class is not in the classpath anymore
+     * @throws ClassCastException if the class doesn't extend OpenCvPipeline
+     * @throws LinkageError if the class couldn't be linked or its static initializer failed
+     */
+    @Suppress("UNCHECKED_CAST")
+    @Synchronized
+    @Throws(ClassNotFoundException::class)
+    fun load(): Class<out OpenCvPipeline> {
+        loadedClass?.let { return it }
+
+        val clazz = Class.forName(name)
+        if(!OpenCvPipeline::class.java.isAssignableFrom(clazz)) {
+            throw ClassCastException("$name doesn't extend OpenCvPipeline")
+        }
+
+        loadedClass = clazz as Class<out OpenCvPipeline>
+        return loadedClass!!
+    }
+
+    override fun toString() = name
+
+}
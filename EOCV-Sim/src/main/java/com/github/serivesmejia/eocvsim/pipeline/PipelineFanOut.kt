@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.pipeline
+
+import com.github.serivesmejia.eocvsim.gui.util.MatPoster
+import com.github.serivesmejia.eocvsim.util.Log
+import com.github.serivesmejia.eocvsim.util.event.EventHandler
+import org.firstinspires.ftc.robotcore.external.Telemetry
+import org.opencv.core.Mat
+import org.openftc.easyopencv.OpenCvPipeline
+import org.openftc.easyopencv.TimestampedPipelineHandler
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Runs extra pipelines alongside the current one of the PipelineManager,
+ * each one over its own copy of the same input frame, concurrently in a
+ * bounded pool of worker threads. The output of every pipeline is posted
+ * to its own MatPoster, so that competing pipelines can be compared live.
+ */
+class PipelineFanOut(private val pipelineManager: PipelineManager) {
+
+    companion object {
+        //leave one core for the current pipeline of the manager
+        val MAX_WORKER_THREADS = (Runtime.getRuntime().availableProcessors() - 1).coerceAtLeast(1)
+    }
+
+    private val entries = ArrayList<Entry>()
+
+    private var executor: ExecutorService? = null
+    private val pendingTasks = ArrayList<Pair<Entry, Future<*>>>()
+    private var pendingTimeoutMs = 0L
+    private var pendingDeadline = 0L
+
+    private val workerCount = AtomicInteger(0)
+
+    val isEmpty get() = synchronized(entries) { entries.isEmpty() }
+
+    /**
+     * Instantiates the given pipeline class and adds it to the fan out,
+     * it will start receiving frames on the next update.
+     *
+     * @param poster the poster to which the output of the pipeline will be
+     *               posted, a new one will be created if none is given
+     * @return the created entry, or null if the pipeline couldn't be instantiated
+     */
+    @JvmOverloads
+    fun add(pipelineClass: Class<out OpenCvPipeline>, poster: MatPoster? = null): Entry? {
+        val telemetry = Telemetry()
+
+        val pipeline = try {
+            pipelineManager.instantiatePipeline(pipelineClass, telemetry)
+        } catch(ex: Exception) {
+            Log.error("PipelineFanOut", "Error while instantiating pipeline ${pipelineClass.simpleName}", ex)
+            return null
+        }
+
+        val entry = Entry(
+            pipelineClass, pipeline, telemetry,
+            poster ?: MatPoster("FanOut-${pipelineClass.simpleName}", 5),
+            poster == null
+        )
+
+        synchronized(entries) {
+            entries.add(entry)
+
+            if(executor == null) {
+                executor = Executors.newFixedThreadPool(MAX_WORKER_THREADS) { runnable ->
+                    Thread(runnable, "PipelineFanOut-Worker-${workerCount.incrementAndGet()}").apply {
+                        isDaemon = true
+                    }
+                }
+            }
+        }
+
+        Log.info("PipelineFanOut", "Added pipeline ${pipelineClass.simpleName} to the fan out")
+
+        return entry
+    }
+
+    fun remove(entry: Entry) {
+        synchronized(entries) {
+            if(!entries.remove(entry)) return
+            if(entries.isEmpty()) shutdownExecutor()
+        }
+
+        //only stop the posters we created ourselves
+        if(entry.ownsPoster) entry.poster.stop()
+        entry.release()
+
+        Log.info("PipelineFanOut", "Removed pipeline ${entry.pipelineClass.simpleName} from the fan out")
+        entry.onRemoved.run()
+    }
+
+    fun clear() {
+        for(entry in getEntries()) {
+            remove(entry)
+        }
+    }
+
+    fun getEntries() = synchronized(entries) { entries.toTypedArray() }
+
+    /**
+     * Copies the input mat for every entry and submits them to the worker
+     * pool. Must be followed by a call to await() in the same thread.
+     *
+     * @param timeoutMs the time the pipelines have to finish, counting from now
+     */
+    fun dispatch(inputMat: Mat, timeoutMs: Long) {
+        val executor = synchronized(entries) { executor } ?: return
+
+        pendingTimeoutMs = timeoutMs
+        pendingDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs)
+
+        for(entry in getEntries()) {
+            //copy in this thread, the current pipeline might modify
+            //the input mat while the fan out pipelines are running
+            if(!entry.copyInput(inputMat)) continue //removed in the meantime
+            entry.timestampedPipelineHandler.update(entry.pipeline)
+
+            try {
+                pendingTasks.add(Pair(entry, executor.submit { entry.process() }))
+            } catch(ignored: RejectedExecutionException) {
+                //the pool was shut down by remove() or clear()
+            }
+        }
+    }
+
+    /**
+     * Waits for all the pipelines submitted by dispatch() to finish, up
+     * to the timeout given there. The pipelines which didn't finish in
+     * time are removed from the fan out.
+     */
+    fun await() {
+        for((entry, future) in pendingTasks) {
+            try {
+                future.get((pendingDeadline - System.nanoTime()).coerceAtLeast(0), TimeUnit.NANOSECONDS)
+            } catch(ex: TimeoutException) {
+                future.cancel(true)
+                remove(entry)
+
+                Log.warn("PipelineFanOut", "Pipeline ${entry.pipelineClass.simpleName} took too long to ${entry.lastAction} (more than $pendingTimeoutMs ms), removed it from the fan out.")
+                Log.blank()
+            } catch(ignored: CancellationException) {
+            } catch(ex: ExecutionException) {
+                Log.error("PipelineFanOut", "Uncaught exception thrown while running pipeline ${entry.pipelineClass.simpleName}", ex.cause)
+            }
+        }
+
+        pendingTasks.clear()
+    }
+
+    private fun shutdownExecutor() {
+        executor?.shutdownNow()
+        executor = null
+    }
+
+    class Entry internal constructor(
+        val pipelineClass: Class<out OpenCvPipeline>,
+        val pipeline: OpenCvPipeline,
+        val telemetry: Telemetry,
+        val poster: MatPoster,
+        internal val ownsPoster: Boolean
+    ) {
+
+        @JvmField val onRemoved = EventHandler("OnFanOutEntryRemoved")
+
+        internal val inputMat = Mat()
+        internal val timestampedPipelineHandler = TimestampedPipelineHandler()
+
+        private var hasInit = false
+
+        //guarded by this entry, the input mat is released once it's removed
+        //and no worker is processing it anymore (e.g. after a timeout)
+        private var processing = false
+        private var released = false
+
+        internal val lastAction get() = if(hasInit) "processFrame" else "init/processFrame"
+
+        internal fun copyInput(mat: Mat) = synchronized(this) {
+            if(!released) mat.copyTo(inputMat)
+            !released
+        }
+
+        internal fun release() = synchronized(this) {
+            released = true
+            if(!processing) inputMat.release()
+        }
+
+        internal fun process() {
+            synchronized(this) {
+                if(released) return
+                processing = true
+            }
+
+            try {
+                if(!hasInit) {
+                    pipeline.init(inputMat)
+                    hasInit = true
+                }
+
+                pipeline.processFrame(inputMat)?.let { outputMat ->
+                    if(!Thread.currentThread().isInterrupted) {
+                        poster.post(outputMat)
+                    }
+                }
+
+                telemetry.errItem.caption = ""
+                telemetry.errItem.setValue("")
+            } catch(ex: Exception) {
+                telemetry.errItem.caption = "[/!\\]"
+                telemetry.errItem.setValue("Uncaught exception thrown in pipeline\nCheck console for details.")
+
+                Log.error("PipelineFanOut", "Uncaught exception thrown while processing pipeline ${pipelineClass.simpleName}", ex)
+            } finally {
+                synchronized(this) {
+                    processing = false
+                    if(released) inputMat.release()
+                }
+            }
+        }
+
+    }
+
+}
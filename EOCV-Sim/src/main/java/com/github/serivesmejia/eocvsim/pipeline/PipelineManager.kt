@@ -29,21 +29,23 @@ import com.github.serivesmejia.eocvsim.util.Log
 import com.github.serivesmejia.eocvsim.util.event.EventHandler
 import com.github.serivesmejia.eocvsim.util.exception.MaxActiveContextsException
 import com.github.serivesmejia.eocvsim.util.fps.FpsCounter
-import kotlinx.coroutines.*
+import com.github.serivesmejia.eocvsim.util.image.MatPool
+import com.github.serivesmejia.eocvsim.util.profiler.StageProfiler
 import org.firstinspires.ftc.robotcore.external.Telemetry
 import org.opencv.core.Mat
 import org.openftc.easyopencv.OpenCvPipeline
 import org.openftc.easyopencv.TimestampedPipelineHandler
 import java.awt.Dimension
-import java.lang.reflect.Constructor
 import java.util.*
-import kotlin.coroutines.EmptyCoroutineContext
+import java.util.concurrent.ConcurrentHashMap
 
 class PipelineManager(var eocvSim: EOCVSim) {
 
     companion object {
         const val PIPELINE_TIMEOUT_MS = 4100L
         const val MAX_ALLOWED_ACTIVE_PIPELINE_CONTEXTS = 4
+        const val SHARED_OUTPUT_MATS = 8
+        const val MAX_PIPELINE_DEPTH = 4
     }
 
     @JvmField val onUpdate          = EventHandler("OnPipelineUpdate")
@@ -53,13 +55,29 @@ class PipelineManager(var eocvSim: EOCVSim) {
     @JvmField val onResume          = EventHandler("OnPipelineResume")
 
     val pipelineOutputPosters = ArrayList<MatPoster>()
+    //posters which receive the input frames, before the pipeline processes them
+    val pipelineInputPosters = ArrayList<MatPoster>()
+    //postables which receive the output mat synchronously, in the pipeline
+    //thread, before update() returns. used when frames can't be dropped
+    val pipelineOutputPostables = ArrayList<MatPoster.Postable>()
+    //listeners which receive the telemetry of the pipeline after every
+    //processed frame, in the pipeline thread, along with the capture timestamp
+    val pipelineTelemetryListeners = ArrayList<TelemetryListener>()
     val pipelineFpsCounter = FpsCounter()
 
-    private var hasInitCurrentPipeline = false
+    //profiler stage of each output poster, created the first time
+    //the poster gets a frame instead of building its name every time
+    private val posterStages = ConcurrentHashMap<MatPoster, StageProfiler.Stage>()
+
+    private val outputMatPool = MatPool("PipelineOutput", SHARED_OUTPUT_MATS, MatPool.Policy.GROW)
+
+    //extra pipelines which run alongside the current one over the same frame
+    @JvmField val fanOut = PipelineFanOut(this)
+
     var lastPipelineAction = "processFrame"
         private set
 
-    val pipelines = ArrayList<Class<out OpenCvPipeline>>()
+    val pipelines = ArrayList<LazyPipelineClass>()
 
     @Volatile var currentPipeline: OpenCvPipeline? = null
         private set
@@ -68,8 +86,26 @@ class PipelineManager(var eocvSim: EOCVSim) {
     var currentPipelineIndex = -1
         private set
 
-    val activePipelineContexts = ArrayList<ExecutorCoroutineDispatcher>()
-    private var currentPipelineContext: ExecutorCoroutineDispatcher? = null
+    val activePipelineWorkers = ArrayList<PipelineWorker>()
+    //everything the worker of the current pipeline touches. the tasks
+    //hold on to the context they were created for, so that a worker
+    //which is still running a frame after a pipeline change never
+    //touches the pipeline, telemetry or mats of the next one
+    private var currentContext: PipelineContext? = null
+
+    /**
+     * How many frames can be in flight between the input source and the
+     * pipeline. With more than one, the next frame is read from the source
+     * while the pipeline is still processing the previous one(s). Headless
+     * mode always processes frames one by one since it writes the output
+     * and telemetry of every frame as soon as update() returns.
+     */
+    val pipelineDepth: Int
+        get() = if(eocvSim.isHeadless) {
+            1
+        } else {
+            eocvSim.configManager.config.pipelineDepth.coerceIn(1, MAX_PIPELINE_DEPTH)
+        }
 
     @Volatile var currentTelemetry: Telemetry? = null
         private set
@@ -115,148 +151,231 @@ class PipelineManager(var eocvSim: EOCVSim) {
     fun update(inputMat: Mat) {
         onUpdate.run()
 
-        if(activePipelineContexts.size > MAX_ALLOWED_ACTIVE_PIPELINE_CONTEXTS) {
-            throw MaxActiveContextsException("Current amount of active pipeline coroutine contexts (${activePipelineContexts.size}) is more than the maximum allowed. This generally means that there are multiple pipelines stuck in processFrame() running in the background, check for any lengthy operations in your pipelines.")
+        //workers of pipelines which timed out are kept here until they return
+        activePipelineWorkers.removeIf { !it.isAlive }
+
+        if(activePipelineWorkers.size > MAX_ALLOWED_ACTIVE_PIPELINE_CONTEXTS) {
+            throw MaxActiveContextsException("Current amount of active pipeline workers (${activePipelineWorkers.size}) is more than the maximum allowed. This generally means that there are multiple pipelines stuck in processFrame() running in the background, check for any lengthy operations in your pipelines.")
+        }
+
+        if(paused) {
+            //the tuner still applies the changes made in the gui while paused. it runs
+            //in the worker like it does before every frame, so it waits for the frames
+            //still in flight. nothing is queued if the worker has no room right now
+            currentContext?.let { it.worker.submit(it.tunerTask, 0) }
+            return
         }
 
-        if(paused) return
+        //the input mat was just read from the source, the output
+        //frames are posted with this so that they can be synced later
+        val captureNanos = System.nanoTime()
 
-        timestampedPipelineHandler.update(currentPipeline)
+        for (poster in pipelineInputPosters.toTypedArray()) {
+            poster.post(inputMat, captureNanos)
+        }
+
+        val context = currentContext!!
 
-        lastPipelineAction = if(!hasInitCurrentPipeline) {
+        lastPipelineAction = if(!context.hasInit) {
             "init/processFrame"
         } else {
             "processFrame"
         }
 
-        //run our pipeline in the background until it finishes or gets cancelled
-        val pipelineJob = GlobalScope.launch(currentPipelineContext!!) {
-            try {
-                //if we have a pipeline, we run it right here, passing the input mat
-                //given to us. we'll post the frame the pipeline returns as long
-                //as we haven't ran out of time (the main loop will not wait it
-                //forever to finish its job). if we run out of time, and if the
-                //pipeline ever returns, we will not post the frame, since we
-                //don't know when it was actually requested, we might even be in
-                //a different pipeline at this point. we also call init if we
-                //haven't done so.
-
-                if(!hasInitCurrentPipeline) {
-                    currentPipeline?.init(inputMat)
-
-                    Log.info("PipelineManager", "Initialized pipeline $currentPipelineName")
-                    Log.blank()
-
-                    hasInitCurrentPipeline = true
-                }
+        //allow double timeout if we haven't initialized the pipeline
+        val timeout = if(context.hasInit) {
+            PIPELINE_TIMEOUT_MS
+        } else {
+            PIPELINE_TIMEOUT_MS * 2
+        }
+
+        //start the fan out pipelines first so that they run at the same time
+        //as the current pipeline. they always get the double timeout since
+        //any of them might have been just added and be initializing
+        fanOut.dispatch(inputMat, PIPELINE_TIMEOUT_MS * 2)
+
+        val worker = context.worker
+        val depth = pipelineDepth
+
+        val finishedInTime = if(depth <= 1) {
+            timestampedPipelineHandler.update(currentPipeline)
+
+            //ok! this is the part in which we hand the frame over to the pipeline
+            //worker and wait for it with a timeout, the worker thread stays
+            //alive between frames so this is just a signal to it
+            context.inputMat = inputMat
+            context.inputCaptureNanos = captureNanos
+            worker.run(context.processFrameTask, timeout)
+        } else {
+            //in pipelined mode we only wait for the worker to have room for
+            //this frame, so that the next one is read from the source while
+            //this one is being processed. the worker runs frames in order
+            val frame = context.nextPipelinedFrame(depth)
+            inputMat.copyTo(frame.mat)
+            frame.timestamp = timestampedPipelineHandler.nextTimestamp()
+            frame.captureNanos = captureNanos
+
+            worker.capacity = depth - 1
+            worker.submit(frame.task, timeout)
+        }
+
+        if(!finishedInTime) {
+            //we stop our pipeline worker so that it
+            //doesn't post the output mat from the
+            //pipeline if it ever returns.
+            worker.stop()
 
-                //check if we're still active (not timeouted)
-                //after initialization
-                currentPipeline?.processFrame(inputMat)?.let { outputMat ->
-                    if (isActive) {
-                        pipelineFpsCounter.update()
-
-                        for (poster in pipelineOutputPosters.toTypedArray()) {
-                            try {
-                                poster.post(outputMat)
-                            } catch (ex: Exception) {
-                                Log.error(
-                                    "PipelineManager",
-                                    "Uncaught exception thrown while posting pipeline output Mat to ${poster.name} poster",
-                                    ex
-                                )
+            //oops, pipeline ran out of time! we'll fall back
+            //to default pipeline to avoid further issues.
+            requestForceChangePipeline(0)
+            //also call the event listeners in case
+            //someone wants to do something here
+            onPipelineTimeout.run()
+
+            Log.warn("PipelineManager" , "User pipeline $currentPipelineName took too long to $lastPipelineAction (more than $PIPELINE_TIMEOUT_MS ms), falling back to DefaultPipeline.")
+            Log.blank()
+        }
+
+        fanOut.await()
+    }
+
+    //runs in the pipeline worker thread
+    private fun processPipelinedFrame(context: PipelineContext, frame: PipelinedFrame) {
+        //the pipeline always gets the same input mat instance, like it would
+        //in EasyOpenCV, instead of the frame slot from the ring
+        frame.mat.copyTo(context.pipelinedInputMat)
+        timestampedPipelineHandler.applyTimestamp(context.pipeline, frame.timestamp)
+
+        processFrame(context, context.pipelinedInputMat, frame.captureNanos)
+    }
+
+    //runs in the pipeline worker thread
+    private fun processFrame(context: PipelineContext, inputMat: Mat, captureNanos: Long) {
+        val telemetry = context.telemetry
+
+        //the tunable fields are read and written here, between frames, since
+        //in pipelined mode the main thread moves on while a frame is in flight
+        context.tunerTask.run()
+
+        try {
+            //if we have a pipeline, we run it right here, passing the input mat
+            //given to us. we'll post the frame the pipeline returns as long
+            //as we haven't ran out of time (the main loop will not wait it
+            //forever to finish its job). if we run out of time, and if the
+            //pipeline ever returns, we will not post the frame, since we
+            //don't know when it was actually requested, we might even be in
+            //a different pipeline at this point. we also call init if we
+            //haven't done so.
+
+            if(!context.hasInit) {
+                eocvSim.profiler.measure(eocvSim.profiler.pipelineInitStage) { context.pipeline?.init(inputMat) }
+
+                Log.info("PipelineManager", "Initialized pipeline ${context.name}")
+                Log.blank()
+
+                context.hasInit = true
+            }
+
+            eocvSim.profiler.measure(eocvSim.profiler.processFrameStage) {
+                context.pipeline?.processFrame(inputMat)
+            }?.let { outputMat ->
+                //check if we're still active (not timeouted),
+                //the worker gets interrupted when stopped
+                if (!Thread.currentThread().isInterrupted) {
+                    pipelineFpsCounter.update()
+
+                    //copy the output once and share it between all of the posters,
+                    //falling back to letting each one copy it if they're holding
+                    //on to all of our shared mats (one of them is falling behind)
+                    val sharedOutputMat = outputMatPool.tryTake(outputMat)?.also { outputMat.copyTo(it) }
+
+                    val posters = pipelineOutputPosters.toTypedArray()
+
+                    //drop the stages of the posters which were removed (e.g. recordings)
+                    if (posterStages.size > posters.size) {
+                        posterStages.keys.retainAll(posters.toSet())
+                    }
+
+                    for (poster in posters) {
+                        try {
+                            val stage = posterStages.getOrPut(poster) { eocvSim.profiler.stage("post ${poster.name}") }
+
+                            eocvSim.profiler.measure(stage) {
+                                if(sharedOutputMat != null) {
+                                    poster.postShared(sharedOutputMat, captureNanos)
+                                } else {
+                                    poster.post(outputMat, captureNanos)
+                                }
                             }
+                        } catch (ex: Exception) {
+                            Log.error(
+                                "PipelineManager",
+                                "Uncaught exception thrown while posting pipeline output Mat to ${poster.name} poster",
+                                ex
+                            )
                         }
-                    } else {
-                        activePipelineContexts.remove(this.coroutineContext)
                     }
-                }
 
-                //clear error messages in telemetry
-                currentTelemetry?.errItem?.caption = ""
-                currentTelemetry?.errItem?.setValue("")
-            } catch (ex: Exception) { //handling exceptions from pipelines
-                currentTelemetry?.errItem?.caption = "[/!\\]"
-                currentTelemetry?.errItem?.setValue("Uncaught exception thrown in pipeline\nCheck console for details.")
+                    sharedOutputMat?.returnMat()
 
-                Log.error("PipelineManager", "Uncaught exception thrown while processing pipeline $currentPipelineName", ex)
+                    for (postable in pipelineOutputPostables.toTypedArray()) {
+                        postable.post(outputMat)
+                    }
+                }
             }
-        }
 
-        runBlocking {
-            try {
-                //allow double timeout if we haven't initialized the pipeline
-                val timeout = if(hasInitCurrentPipeline) {
-                    PIPELINE_TIMEOUT_MS
-                } else {
-                    PIPELINE_TIMEOUT_MS * 2
+            if(telemetry != null && pipelineTelemetryListeners.isNotEmpty() && !Thread.currentThread().isInterrupted) {
+                for(listener in pipelineTelemetryListeners.toTypedArray()) {
+                    listener.onTelemetry(telemetry, captureNanos)
                 }
+            }
 
-                //ok! this is the part in which we'll wait for the pipeline with a timeout
-                withTimeout(timeout) {
-                    pipelineJob.join()
-                }
+            //clear error messages in telemetry
+            telemetry?.errItem?.caption = ""
+            telemetry?.errItem?.setValue("")
+        } catch (ex: Exception) { //handling exceptions from pipelines
+            telemetry?.errItem?.caption = "[/!\\]"
+            telemetry?.errItem?.setValue("Uncaught exception thrown in pipeline\nCheck console for details.")
 
-                activePipelineContexts.remove(currentPipelineContext)
-            } catch (ex: TimeoutCancellationException) {
-                //oops, pipeline ran out of time! we'll fall back
-                //to default pipeline to avoid further issues.
-                requestForceChangePipeline(0)
-                //also call the event listeners in case
-                //someone wants to do something here
-                onPipelineTimeout.run()
+            Log.error("PipelineManager", "Uncaught exception thrown while processing pipeline ${context.name}", ex)
+        }
 
-                Log.warn("PipelineManager" , "User pipeline $currentPipelineName took too long to $lastPipelineAction (more than $PIPELINE_TIMEOUT_MS ms), falling back to DefaultPipeline.")
-                Log.blank()
-            } finally {
-                //we cancel our pipeline job so that it
-                //doesn't post the output mat from the
-                //pipeline if it ever returns.
-                pipelineJob.cancel()
+        //the telemetry is evaluated here for the same reason, the panel
+        //only keeps the text and applies it later in the swing thread
+        if(!eocvSim.isHeadless && !Thread.currentThread().isInterrupted) {
+            eocvSim.profiler.measure(eocvSim.profiler.telemetryPanelStage) {
+                eocvSim.visualizer.telemetryPanel?.updateTelemetry(telemetry)
             }
         }
     }
 
     fun callViewportTapped() = currentPipeline?.let { pipeline -> //run only if our pipeline is not null
-        //similar to pipeline processFrame, call the user function in the background
-        //and wait for some X timeout for the user to finisih doing what it has to do.
-        val viewportTappedJob = GlobalScope.launch(currentPipelineContext ?: EmptyCoroutineContext) {
-            pipeline.onViewportTapped()
-        }
+        //similar to pipeline processFrame, call the user function in the pipeline
+        //worker and wait for some X timeout for the user to finisih doing what it has to do.
+        val worker = currentContext?.worker ?: return@let
 
-        try {
-            //perform the timeout here (we'll block for a bit
-            //and if it runs out of time, give up and move on)
-            runBlocking {
-                withTimeout(PIPELINE_TIMEOUT_MS) {
-                    viewportTappedJob.join()
-                }
-            }
-        } catch(ex: TimeoutCancellationException) {
+        if(!worker.run(Runnable { pipeline.onViewportTapped() }, PIPELINE_TIMEOUT_MS)) {
             //send a warning to the user
             Log.warn("PipelineManager" , "User pipeline $currentPipelineName took too long to handle onViewportTapped (more than $PIPELINE_TIMEOUT_MS ms).")
-        } finally {
-            //cancel the job
-            viewportTappedJob.cancel()
         }
     }
 
-    @Suppress("UNCHECKED_CAST")
-    fun addPipelineClass(C: Class<*>) {
-        try {
-            pipelines.add(C as Class<out OpenCvPipeline>)
-        } catch (ex: Exception) {
-            Log.error("PipelineManager", "Error while adding pipeline class", ex)
-            Log.error("PipelineManager", "Unable to cast " + C.name + " to OpenCvPipeline class.")
-            Log.error("PipelineManager", "Remember that the pipeline class should extend OpenCvPipeline")
-        }
+    fun addPipelineClass(C: Class<out OpenCvPipeline>) {
+        pipelines.add(LazyPipelineClass(C))
+    }
+
+    /**
+     * Adds a pipeline by its binary class name, the class
+     * isn't loaded until the pipeline is selected for the first time
+     */
+    fun addPipelineClass(className: String) {
+        pipelines.add(LazyPipelineClass(className))
     }
 
     /**
      * Changes to the requested pipeline, no matter
      * if we're currently on the same pipeline or not
      */
-    @OptIn(ObsoleteCoroutinesApi::class)
     fun forceChangePipeline(index: Int) {
         var nextPipeline: OpenCvPipeline? = null
         var nextTelemetry: Telemetry? = null
@@ -264,38 +383,41 @@ class PipelineManager(var eocvSim: EOCVSim) {
 
         Log.info("PipelineManager", "Changing to pipeline " + pipelineClass.name)
 
-        var constructor: Constructor<*>
-
         try {
-            nextTelemetry = Telemetry()
-
-            try { //instantiate pipeline if it has a constructor with a telemetry parameter
-                constructor = pipelineClass.getConstructor(Telemetry::class.java)
-                nextPipeline = constructor.newInstance(nextTelemetry) as OpenCvPipeline
-            } catch (ex: NoSuchMethodException) { //instantiating with a constructor with no params
-                constructor = pipelineClass.getConstructor()
-                nextPipeline = constructor.newInstance() as OpenCvPipeline
+            //the first time this pipeline is selected, its class is loaded
+            //here. a failure in its static initializer shows up as an Error
+            val loadedClass = try {
+                pipelineClass.load()
+            } catch (ex: LinkageError) {
+                throw ClassNotFoundException("Unable to load pipeline class ${pipelineClass.name}", ex)
             }
 
+            nextTelemetry = Telemetry()
+            nextPipeline = instantiatePipeline(loadedClass, nextTelemetry)
+
             Log.info("PipelineManager", "Instantiated pipeline class " + pipelineClass.name)
         } catch (ex: NoSuchMethodException) {
-            eocvSim.visualizer.asyncPleaseWaitDialog("Error while initializing requested pipeline", "Check console for details",
-                    "Close", Dimension(300, 150), true, true)
+            if(!eocvSim.isHeadless) {
+                eocvSim.visualizer.asyncPleaseWaitDialog("Error while initializing requested pipeline", "Check console for details",
+                        "Close", Dimension(300, 150), true, true)
+            }
 
             Log.error("PipelineManager", "Error while initializing requested pipeline (" + pipelineClass.simpleName + ")", ex)
             Log.info("PipelineManager", "Make sure your pipeline implements a public constructor with no parameters or with a Telemetry parameter")
 
-            eocvSim.visualizer.pipelineSelectorPanel.selectedIndex = currentPipelineIndex
+            eocvSim.visualizer.pipelineSelectorPanel?.selectedIndex = currentPipelineIndex
 
             Log.blank()
         } catch (ex: Exception) {
-            eocvSim.visualizer.asyncPleaseWaitDialog("Error while initializing requested pipeline", "Falling back to previous one",
-                    "Close", Dimension(300, 150), true, true)
+            if(!eocvSim.isHeadless) {
+                eocvSim.visualizer.asyncPleaseWaitDialog("Error while initializing requested pipeline", "Falling back to previous one",
+                        "Close", Dimension(300, 150), true, true)
+            }
 
             Log.error("PipelineManager", "Error while initializing requested pipeline (" + pipelineClass.simpleName + ")", ex)
             Log.blank()
 
-            eocvSim.visualizer.pipelineSelectorPanel.selectedIndex = currentPipelineIndex
+            eocvSim.visualizer.pipelineSelectorPanel?.selectedIndex = currentPipelineIndex
 
             return
         }
@@ -305,17 +427,18 @@ class PipelineManager(var eocvSim: EOCVSim) {
         currentPipelineIndex = index
         currentPipelineName  = currentPipeline!!.javaClass.simpleName
 
-        hasInitCurrentPipeline = false
-
-        currentPipelineContext?.close()
-        currentPipelineContext = newSingleThreadContext("Pipeline-$currentPipelineName")
+        //the old worker might still be running a frame, it keeps
+        //using its own context until it returns and then it ends
+        currentContext?.worker?.stop()
+        currentContext = PipelineContext(nextPipeline, nextTelemetry, currentPipelineName)
 
-        activePipelineContexts.add(currentPipelineContext!!)
+        activePipelineWorkers.add(currentContext!!.worker)
 
-        eocvSim.visualizer.pipelineSelectorPanel.selectedIndex = currentPipelineIndex
+        eocvSim.visualizer.pipelineSelectorPanel?.selectedIndex = currentPipelineIndex
 
         //if pause on images option is turned on by user
-        if (eocvSim.configManager.config.pauseOnImages) {
+        //(never pause in headless mode, every frame should be processed)
+        if (eocvSim.configManager.config.pauseOnImages && !eocvSim.isHeadless) {
             //pause next frame if current selected inputsource is an image
             eocvSim.inputSourceManager.pauseIfImageTwoFrames()
         }
@@ -323,6 +446,18 @@ class PipelineManager(var eocvSim: EOCVSim) {
         onPipelineChange.run()
     }
 
+    /**
+     * Creates a new instance of the given pipeline class, passing the
+     * telemetry to it if it has a constructor with a Telemetry parameter
+     */
+    fun instantiatePipeline(pipelineClass: Class<out OpenCvPipeline>, telemetry: Telemetry): OpenCvPipeline {
+        return try { //instantiate pipeline if it has a constructor with a telemetry parameter
+            pipelineClass.getConstructor(Telemetry::class.java).newInstance(telemetry)
+        } catch (ex: NoSuchMethodException) { //instantiating with a constructor with no params
+            pipelineClass.getConstructor().newInstance()
+        }
+    }
+
     /**
      * Change to the requested pipeline only if we're
      * not in the requested pipeline right now.
@@ -352,7 +487,7 @@ class PipelineManager(var eocvSim: EOCVSim) {
             onResume.run()
         }
 
-        eocvSim.visualizer.pipelineSelectorPanel.pipelinePauseBtt.isSelected = this.paused
+        eocvSim.visualizer.pipelineSelectorPanel?.pipelinePauseBtt?.isSelected = this.paused
     }
 
     fun togglePause() = setPaused(!paused)
@@ -366,4 +501,51 @@ class PipelineManager(var eocvSim: EOCVSim) {
         setPaused(paused, PauseReason.USER_REQUESTED)
     }
 
-}
\ No newline at end of file
+    private inner class PipelineContext(val pipeline: OpenCvPipeline?,
+                                        val telemetry: Telemetry?,
+                                        val name: String) {
+        val worker = PipelineWorker(name)
+
+        //written by the worker, read by the main thread for the timeout
+        @Volatile var hasInit = false
+
+        //input of the frame processed one by one, set before each run
+        @Volatile var inputMat: Mat? = null
+        @Volatile var inputCaptureNanos = 0L
+        val processFrameTask = Runnable { inputMat?.let { processFrame(this, it, inputCaptureNanos) } }
+
+        val tunerTask = Runnable {
+            eocvSim.profiler.measure(eocvSim.profiler.tunerStage) { eocvSim.tunerManager.update(pipeline) }
+        }
+
+        //ring of frames waiting to be processed when running pipelined
+        private var pipelinedFrames = arrayOf<PipelinedFrame>()
+        private var pipelinedFrameCount = 0L
+        val pipelinedInputMat by lazy { Mat() }
+
+        fun nextPipelinedFrame(depth: Int): PipelinedFrame {
+            if(pipelinedFrames.size != depth) {
+                //the worker might still be processing some of the old
+                //frames, so their mats are left for the gc to release
+                pipelinedFrames = Array(depth) { PipelinedFrame(this) }
+            }
+
+            //the worker holds at most depth - 1 frames, so the slot
+            //we take from the ring is never one it's still using
+            return pipelinedFrames[(pipelinedFrameCount++ % depth).toInt()]
+        }
+    }
+
+    private inner class PipelinedFrame(context: PipelineContext) {
+        val mat = Mat()
+        var timestamp = 0L
+        var captureNanos = 0L
+
+        val task = Runnable { processPipelinedFrame(context, this) }
+    }
+
+    fun interface TelemetryListener {
+        fun onTelemetry(telemetry: Telemetry, captureNanos: Long)
+    }
+
+}
@@ -23,41 +23,58 @@
 
 package com.github.serivesmejia.eocvsim.pipeline
 
+import com.github.serivesmejia.eocvsim.util.ClasspathScanIndex
 import com.github.serivesmejia.eocvsim.util.Log
-import com.github.serivesmejia.eocvsim.util.ReflectUtil
 import io.github.classgraph.ClassGraph
 import io.github.classgraph.ScanResult
 import org.openftc.easyopencv.OpenCvPipeline
 
-@Suppress("UNCHECKED_CAST")
 class PipelineScanner(val scanInPackage: String = "org.firstinspires") {
 
-    fun lookForPipelines(callback: (Class<OpenCvPipeline>) -> Unit) {
-        Log.info("PipelineScanner", "Scanning for pipelines...")
-        val scanResult = scanClasspath(scanInPackage)
+    /**
+     * Looks for the non-abstract subclasses of OpenCvPipeline in the package,
+     * only by reading the class files metadata. None of the found classes is
+     * loaded here, the callback receives their binary names.
+     */
+    fun lookForPipelines(callback: (String) -> Unit) {
+        val indexKey = "pipelines:$scanInPackage"
 
-        //iterate over the results of the scan
-        for (routeClassInfo in scanResult.allClasses) {
+        //the classpath didn't change since the last scan, use its results
+        ClasspathScanIndex.get(indexKey)?.let { classNames ->
+            Log.info("PipelineScanner", "Using the pipelines found in the last scan")
 
-            val foundClass: Class<*> = try {
-                Class.forName(routeClassInfo.name)
-            } catch (e1: ClassNotFoundException) {
-                e1.printStackTrace()
-                continue  //continue because we couldn't get the class...
+            for(className in classNames) {
+                Log.info("PipelineScanner", "Found pipeline class $className")
+                callback(className)
             }
 
-            if(ReflectUtil.hasSuperclass(foundClass, OpenCvPipeline::class.java)) {
-                Log.info("PipelineScanner", "Found pipeline class ${foundClass.canonicalName}")
-                callback(foundClass as Class<OpenCvPipeline>);
-            }
+            return
+        }
+
+        Log.info("PipelineScanner", "Scanning for pipelines...")
 
+        val foundClassNames = ArrayList<String>()
+
+        scanClasspath(scanInPackage).use { scanResult ->
+            //the superclass chain is resolved by classgraph, even
+            //if the pipelines extend other classes of the package
+            for(classInfo in scanResult.getSubclasses(OpenCvPipeline::class.java.name)) {
+                //abstract pipelines can't be instantiated anyways
+                if(classInfo.isAbstract || classInfo.isInterface) continue
+
+                Log.info("PipelineScanner", "Found pipeline class ${classInfo.name}")
+                foundClassNames.add(classInfo.name)
+                callback(classInfo.name)
+            }
         }
+
+        ClasspathScanIndex.put(indexKey, foundClassNames)
     }
 
     fun scanClasspath(inPackage: String): ScanResult {
         //Scan for all classes in the specified package
-        val classGraph = ClassGraph().enableAllInfo().acceptPackages(inPackage)
+        val classGraph = ClassGraph().enableClassInfo().acceptPackages(inPackage)
         return classGraph.scan()
     }
 
-}
\ No newline at end of file
+}
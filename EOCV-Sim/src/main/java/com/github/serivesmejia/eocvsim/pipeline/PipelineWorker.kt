@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.pipeline
+
+import com.github.serivesmejia.eocvsim.util.Log
+import java.util.ArrayDeque
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Long-lived thread which runs the tasks of a single pipeline (init,
+ * processFrame, onViewportTapped) one at a time, in the order they were
+ * submitted. Handing a task over is just adding it to a small bounded
+ * queue and signalling the worker, and the caller waits for it with a
+ * timeout. A worker whose task timed out should be stopped, its thread
+ * will end once the user code returns.
+ */
+class PipelineWorker(val name: String) {
+
+    private val lock = ReentrantLock()
+    private val tasksChanged = lock.newCondition()
+
+    //the task currently running is kept at the head until it finishes
+    private val tasks = ArrayDeque<Runnable>()
+
+    private var submittedTasks = 0L
+    private var finishedTasks = 0L
+
+    /**
+     * How many tasks can be queued at once, including the one running.
+     * Submitting more than this blocks until the oldest one finishes
+     */
+    @Volatile var capacity = 1
+        set(value) {
+            field = value.coerceAtLeast(1)
+        }
+
+    @Volatile var isStopped = false
+        private set
+
+    val isAlive get() = thread.isAlive
+
+    private val thread = Thread(this::workerLoop, "Pipeline-$name").apply {
+        isDaemon = true
+        start()
+    }
+
+    /**
+     * Runs the given task in the worker thread and waits for it to finish
+     * @return false if the task (or the ones queued before it) didn't finish within the timeout
+     */
+    fun run(task: Runnable, timeoutMs: Long): Boolean = lock.withLock {
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs)
+
+        val taskNumber = enqueue(task, deadline)
+        taskNumber != -1L && await(taskNumber, deadline)
+    }
+
+    /**
+     * Queues the given task without waiting for it to finish, waiting only
+     * for the queue to have room for it
+     * @return false if there was no room for the task within the timeout
+     */
+    fun submit(task: Runnable, timeoutMs: Long): Boolean = lock.withLock {
+        enqueue(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs)) != -1L
+    }
+
+    private fun enqueue(task: Runnable, deadline: Long): Long {
+        while(tasks.size >= capacity) {
+            val remainingNanos = deadline - System.nanoTime()
+            if(remainingNanos <= 0 || isStopped) return -1
+            tasksChanged.awaitNanos(remainingNanos)
+        }
+
+        if(isStopped) return -1
+
+        tasks.addLast(task)
+        tasksChanged.signalAll()
+
+        return ++submittedTasks
+    }
+
+    private fun await(taskNumber: Long, deadline: Long): Boolean {
+        while(finishedTasks < taskNumber) {
+            val remainingNanos = deadline - System.nanoTime()
+            if(remainingNanos <= 0) return false
+            tasksChanged.awaitNanos(remainingNanos)
+        }
+
+        return true
+    }
+
+    /**
+     * Stops the worker, the task which is currently running (if any) is
+     * interrupted, and the thread ends as soon as that task returns.
+     * The tasks which didn't start yet are discarded.
+     */
+    fun stop() {
+        lock.withLock {
+            isStopped = true
+            tasksChanged.signalAll()
+        }
+
+        thread.interrupt()
+    }
+
+    private fun workerLoop() {
+        while(!isStopped) {
+            val currentTask = lock.withLock {
+                while(tasks.isEmpty() && !isStopped) {
+                    try {
+                        tasksChanged.await()
+                    } catch(ignored: InterruptedException) { }
+                }
+
+                if(isStopped) null else tasks.peekFirst()
+            } ?: break
+
+            try {
+                currentTask.run()
+            } catch(ex: Exception) {
+                Log.error("PipelineWorker", "Uncaught exception thrown in worker of pipeline $name", ex)
+            }
+
+            lock.withLock {
+                tasks.pollFirst()
+                finishedTasks++
+                tasksChanged.signalAll()
+            }
+        }
+    }
+
+}
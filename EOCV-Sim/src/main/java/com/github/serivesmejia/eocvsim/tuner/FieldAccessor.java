@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.tuner;
+
+import org.openftc.easyopencv.OpenCvPipeline;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads and writes a pipeline field through method handles, which are
+ * created a single time per field instead of going through the reflection
+ * checks on every access. The primitive getters don't box the value, so
+ * that the TunableFields can poll their value every frame without allocating.
+ *
+ * Method handles are used instead of var handles since unreflecting a getter
+ * honors setAccessible(), which allows fields of non-public pipeline classes.
+ */
+public final class FieldAccessor {
+
+    private static final Map<Field, FieldAccessor> accessors = new ConcurrentHashMap<>();
+
+    private final Field field;
+
+    // (OpenCvPipeline)Object
+    private final MethodHandle getter;
+    // (OpenCvPipeline,Object)void
+    private final MethodHandle setter;
+    // (OpenCvPipeline)<field type>, only for primitive fields
+    private final MethodHandle primitiveGetter;
+
+    private FieldAccessor(Field field) throws IllegalAccessException {
+        this.field = field;
+        field.setAccessible(true);
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        MethodHandle rawGetter = lookup.unreflectGetter(field);
+        MethodHandle rawSetter = lookup.unreflectSetter(field);
+
+        getter = rawGetter.asType(MethodType.methodType(Object.class, OpenCvPipeline.class));
+        setter = rawSetter.asType(MethodType.methodType(void.class, OpenCvPipeline.class, Object.class));
+
+        if(field.getType().isPrimitive()) {
+            primitiveGetter = rawGetter.asType(MethodType.methodType(field.getType(), OpenCvPipeline.class));
+        } else {
+            primitiveGetter = null;
+        }
+    }
+
+    /**
+     * Returns the accessor of the given field, which is only
+     * created the first time a field is requested.
+     */
+    public static FieldAccessor of(Field field) throws IllegalAccessException {
+        FieldAccessor accessor = accessors.get(field);
+
+        if(accessor == null) {
+            accessor = new FieldAccessor(field);
+            accessors.put(field, accessor);
+        }
+
+        return accessor;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public Object get(OpenCvPipeline pipeline) {
+        try {
+            return getter.invokeExact(pipeline);
+        } catch(Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public void set(OpenCvPipeline pipeline, Object value) {
+        try {
+            setter.invokeExact(pipeline, value);
+        } catch(Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    //the primitive getters must only be called if
+    //the field is exactly of the requested type
+
+    public int getInt(OpenCvPipeline pipeline) {
+        try {
+            return (int) primitiveGetter.invokeExact(pipeline);
+        } catch(Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public long getLong(OpenCvPipeline pipeline) {
+        try {
+            return (long) primitiveGetter.invokeExact(pipeline);
+        } catch(Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public float getFloat(OpenCvPipeline pipeline) {
+        try {
+            return (float) primitiveGetter.invokeExact(pipeline);
+        } catch(Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public double getDouble(OpenCvPipeline pipeline) {
+        try {
+            return (double) primitiveGetter.invokeExact(pipeline);
+        } catch(Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public boolean getBoolean(OpenCvPipeline pipeline) {
+        try {
+            return (boolean) primitiveGetter.invokeExact(pipeline);
+        } catch(Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public boolean isPrimitive() {
+        return primitiveGetter != null;
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if(t instanceof Error) throw (Error) t;
+        if(t instanceof RuntimeException) return (RuntimeException) t;
+
+        return new IllegalStateException(t);
+    }
+
+}
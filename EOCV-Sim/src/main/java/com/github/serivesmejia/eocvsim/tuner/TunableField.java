@@ -36,6 +36,7 @@ import java.lang.reflect.Type;
 public abstract class TunableField<T> {
 
     protected Field reflectionField;
+    protected final FieldAccessor fieldAccessor;
     protected TunableFieldPanel fieldPanel;
 
     protected OpenCvPipeline pipeline;
@@ -51,13 +52,16 @@ public abstract class TunableField<T> {
 
     private TunableFieldPanel.Mode recommendedMode = null;
 
+    private volatile boolean guiUpdateRequested = false;
+
     public TunableField(OpenCvPipeline instance, Field reflectionField, EOCVSim eocvSim, AllowMode allowMode) throws IllegalAccessException {
         this.reflectionField = reflectionField;
         this.pipeline = instance;
         this.allowMode = allowMode;
         this.eocvSim = eocvSim;
 
-        initialFieldValue = reflectionField.get(instance);
+        fieldAccessor = FieldAccessor.of(reflectionField);
+        initialFieldValue = fieldAccessor.get(instance);
     }
 
     public TunableField(OpenCvPipeline instance, Field reflectionField, EOCVSim eocvSim) throws IllegalAccessException {
@@ -70,9 +74,28 @@ public abstract class TunableField<T> {
 
     public abstract void updateGuiFieldValues();
 
+    /**
+     * Marks the gui field values of this field as outdated, they will be updated
+     * later by the TunerManager from the swing thread, along with the ones of the
+     * rest of the fields which changed, instead of calling updateGuiFieldValues() here.
+     */
+    protected final void requestGuiUpdate() {
+        guiUpdateRequested = true;
+    }
+
+    /**
+     * @return whether a gui update was requested since the last call
+     */
+    public final boolean pollGuiUpdateRequest() {
+        boolean requested = guiUpdateRequested;
+        guiUpdateRequested = false;
+
+        return requested;
+    }
+
     public void setPipelineFieldValue(T newValue) throws IllegalAccessException {
         if (hasChanged()) { //execute if value is not the same to save resources
-            reflectionField.set(pipeline, newValue);
+            fieldAccessor.set(pipeline, newValue);
             onValueChange.run();
         }
     }
@@ -24,12 +24,14 @@
 package com.github.serivesmejia.eocvsim.tuner;
 
 import com.github.serivesmejia.eocvsim.EOCVSim;
+import com.github.serivesmejia.eocvsim.gui.component.ViewportImage;
 import com.github.serivesmejia.eocvsim.gui.component.tuner.TunableFieldPanel;
 import com.github.serivesmejia.eocvsim.tuner.scanner.AnnotatedTunableFieldScanner;
 import com.github.serivesmejia.eocvsim.util.Log;
 import com.github.serivesmejia.eocvsim.util.ReflectUtil;
 import org.openftc.easyopencv.OpenCvPipeline;
 
+import javax.swing.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -37,6 +39,8 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @SuppressWarnings("rawtypes")
 public class TunerManager {
@@ -44,33 +48,37 @@ public class TunerManager {
     private final EOCVSim eocvSim;
 
     private final List<TunableField> fields = new ArrayList<>();
+    //the pipeline instance the current fields were created for
+    private OpenCvPipeline fieldsPipeline = null;
 
-    private TunableFieldAcceptorManager acceptorManager = null;
+    private static TunableFieldAcceptorManager acceptorManager = null;
 
     private static HashMap<Type, Class<? extends TunableField<?>>> tunableFieldsTypes = null;
     private boolean firstInit = true;
 
+    //gui updates are sent to the swing thread in batches, at most once per display frame
+    private final long guiSyncIntervalNanos = TimeUnit.SECONDS.toNanos(1) / ViewportImage.getDisplayRefreshRate();
+    private long lastGuiSyncNanos = 0;
+
+    private final AtomicBoolean guiSyncScheduled = new AtomicBoolean(false);
+    private boolean configReevalRequested = false;
+
     public TunerManager(EOCVSim eocvSim) {
         this.eocvSim = eocvSim;
     }
 
-    public void init() {
-        if(tunableFieldsTypes == null) {
-            AnnotatedTunableFieldScanner.ScanResult result = new AnnotatedTunableFieldScanner(
-                    eocvSim.getParams().getScanForTunableFieldsIn()
-            ).scan();
-
-            tunableFieldsTypes = result.getTunableFields();
-            acceptorManager = new TunableFieldAcceptorManager(result.getAcceptors());
-        }
+    public synchronized void init() {
+        scanTunableFieldTypes();
 
         if (firstInit) {
             eocvSim.pipelineManager.onPipelineChange.doPersistent(this::reset);
             firstInit = false;
         }
 
-        if (eocvSim.pipelineManager.getCurrentPipeline() != null) {
-            addFieldsFrom(eocvSim.pipelineManager.getCurrentPipeline());
+        fieldsPipeline = eocvSim.pipelineManager.getCurrentPipeline();
+
+        if (fieldsPipeline != null) {
+            addFieldsFrom(fieldsPipeline);
             eocvSim.visualizer.updateTunerFields(createTunableFieldPanels());
 
             for(TunableField field : fields) {
@@ -79,33 +87,125 @@ public class TunerManager {
         }
     }
 
-    public void update() {
-        //update all fields
-        for(TunableField field : fields.toArray(new TunableField[0])) {
+    /**
+     * Updates the fields only if they belong to the given pipeline instance. Called
+     * from the pipeline worker thread between frames, so that the fields of the pipeline
+     * are never read or written while it's processing one. A worker which is still running
+     * after a pipeline change won't touch the fields of the next pipeline this way
+     */
+    public synchronized void update(OpenCvPipeline pipeline) {
+        if (pipeline == null || pipeline != fieldsPipeline) return;
+        update();
+    }
+
+    public synchronized void update() {
+        //update all fields, iterating by index to avoid
+        //copying the list into a new array every frame
+        for(int i = 0; i < fields.size(); i++) {
+            TunableField field = fields.get(i);
+
             try {
                 field.update();
             } catch(Exception ex) {
                 Log.error("Error while updating field " + field.getFieldName(), ex);
             }
 
-            //check if this field has requested to reevaluate config for all panels
+            //check if this field has requested to reevaluate config for all panels,
+            //which is done a single time in the next gui sync regardless of how many
             if(field.fieldPanel.hasRequestedAllConfigReeval()) {
-                //if so, iterate through all fields to reevaluate
-                for(TunableField f : fields.toArray(new TunableField[0])) {
-                    f.fieldPanel.panelOptions.reevaluateConfig();
-                }
+                configReevalRequested = true;
             }
         }
+
+        syncGui();
     }
 
-    public void reset() {
+    /**
+     * Sends the gui values of the fields which changed since the last sync to
+     * the swing thread, in a single invokeLater. Skipped if the previous sync
+     * hasn't run yet or if it was less than a display frame ago, the changes
+     * are kept until the next one so only the latest values are shown.
+     */
+    private void syncGui() {
+        long now = System.nanoTime();
+        if(now - lastGuiSyncNanos < guiSyncIntervalNanos || guiSyncScheduled.get()) return;
+
+        List<TunableField> changedFields = null;
+
+        for(int i = 0; i < fields.size(); i++) {
+            TunableField field = fields.get(i);
+
+            if(field.pollGuiUpdateRequest()) {
+                if(changedFields == null) changedFields = new ArrayList<>();
+                changedFields.add(field);
+            }
+        }
+
+        boolean reevalConfigs = configReevalRequested;
+        configReevalRequested = false;
+
+        if(changedFields == null && !reevalConfigs) return;
+
+        lastGuiSyncNanos = now;
+        guiSyncScheduled.set(true);
+
+        List<TunableField> syncedFields = changedFields;
+        List<TunableField> allFields = reevalConfigs ? new ArrayList<>(fields) : null;
+
+        SwingUtilities.invokeLater(() -> {
+            try {
+                if(syncedFields != null) {
+                    for(TunableField field : syncedFields) {
+                        try {
+                            field.updateGuiFieldValues();
+                        } catch(Exception ex) {
+                            Log.error("Error while updating gui of field " + field.getFieldName(), ex);
+                        }
+                    }
+                }
+
+                if(allFields != null) {
+                    for(TunableField field : allFields) {
+                        field.fieldPanel.panelOptions.reevaluateConfig();
+                    }
+                }
+            } finally {
+                guiSyncScheduled.set(false);
+            }
+        });
+    }
+
+    public synchronized void reset() {
         fields.clear();
         init();
     }
 
+    private void scanTunableFieldTypes() {
+        if(tunableFieldsTypes == null) {
+            AnnotatedTunableFieldScanner.ScanResult result = new AnnotatedTunableFieldScanner(
+                    eocvSim.getParams().getScanForTunableFieldsIn()
+            ).scan();
+
+            tunableFieldsTypes = result.getTunableFields();
+            acceptorManager = new TunableFieldAcceptorManager(result.getAcceptors());
+        }
+    }
+
     public void addFieldsFrom(OpenCvPipeline pipeline) {
+        fields.addAll(createFieldsFor(pipeline));
+    }
+
+    /**
+     * Creates the TunableFields of the given pipeline instance without adding
+     * them to this manager, they won't have a panel attached to them so only
+     * setGuiFieldValue() and getValue() can be used (e.g for parameter sweeps)
+     */
+    public List<TunableField> createFieldsFor(OpenCvPipeline pipeline) {
+        List<TunableField> createdFields = new ArrayList<>();
 
-        if (pipeline == null) return;
+        if (pipeline == null) return createdFields;
+
+        scanTunableFieldTypes();
 
         Field[] fields = pipeline.getClass().getFields();
 
@@ -135,13 +235,15 @@ public class TunerManager {
             //and add it to the list...
             try {
                 Constructor<? extends TunableField> constructor = tunableFieldClass.getConstructor(OpenCvPipeline.class, Field.class, EOCVSim.class);
-                this.fields.add(constructor.newInstance(pipeline, field, eocvSim));
+                createdFields.add(constructor.newInstance(pipeline, field, eocvSim));
             } catch (Exception ex) {
                 //oops rip
                 Log.error("TunerManager", "Reflection error while processing field: " + field.getName(), ex);
             }
 
         }
+
+        return createdFields;
     }
 
     public void reevaluateConfigs() {
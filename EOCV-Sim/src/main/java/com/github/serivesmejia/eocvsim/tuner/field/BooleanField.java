@@ -58,7 +58,7 @@ public class BooleanField extends TunableField<Boolean> {
         hasChanged = value != lastVal;
 
         if (hasChanged) { //update values in GUI if they changed since last check
-            updateGuiFieldValues();
+            requestGuiUpdate();
         }
 
         lastVal = value;
@@ -31,8 +31,8 @@ class EnumField(private val instance: OpenCvPipeline,
 
     override fun update() {
         if(hasChanged()) {
-            currentValue = value
-            updateGuiFieldValues()
+            currentValue = fieldAccessor.get(instance) as Enum<*>
+            requestGuiUpdate()
         }
         beforeValue = currentValue
     }
@@ -45,7 +45,7 @@ class EnumField(private val instance: OpenCvPipeline,
 
     override fun setGuiFieldValue(index: Int, newValue: String) {
         currentValue = java.lang.Enum.valueOf(initialValue::class.java, newValue)
-        reflectionField.set(instance, currentValue)
+        fieldAccessor.set(instance, currentValue)
     }
 
     override fun getValue() = currentValue
@@ -56,7 +56,7 @@ class EnumField(private val instance: OpenCvPipeline,
         return values
     }
 
-    override fun hasChanged() = reflectionField.get(instance) == beforeValue
+    override fun hasChanged() = fieldAccessor.get(instance) !== beforeValue
 
     @RegisterTunableFieldAcceptor(tunableFieldType = EnumField::class)
     class EnumFieldAcceptor: TunableFieldAcceptor {
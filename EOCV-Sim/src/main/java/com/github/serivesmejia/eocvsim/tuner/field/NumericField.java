@@ -49,19 +49,24 @@ public class NumericField<T extends Number> extends TunableField<T> {
     public void update() {
         if (value == null) return;
 
-        try {
-            value = (T) reflectionField.get(pipeline);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        }
-
-        hasChanged = hasChanged();
+        hasChanged = pollValue();
 
         if (hasChanged) {
-            updateGuiFieldValues();
+            requestGuiUpdate();
         }
     }
 
+    /**
+     * Reads the current value of the pipeline field, called every frame.
+     * Subclasses read it as a primitive and only box it when it changed.
+     * @return whether the value changed since the last poll
+     */
+    @SuppressWarnings("unchecked")
+    protected boolean pollValue() {
+        value = (T) fieldAccessor.get(pipeline);
+        return hasChanged();
+    }
+
     @Override
     public void updateGuiFieldValues() {
         fieldPanel.setFieldValue(0, value);
@@ -57,7 +57,7 @@ public class StringField extends TunableField<String> {
         hasChanged = !value.equals(lastVal);
 
         if (hasChanged) { //update values in GUI if they changed since last check
-            updateGuiFieldValues();
+            requestGuiUpdate();
         }
 
         lastVal = value;
@@ -36,7 +36,8 @@ public class PointField extends TunableField<Point> {
 
     Point point;
 
-    double[] lastXY = {0, 0};
+    double lastX = 0;
+    double lastY = 0;
 
     volatile boolean hasChanged = false;
 
@@ -58,13 +59,14 @@ public class PointField extends TunableField<Point> {
     @Override
     public void update() {
 
-        hasChanged = point.x != lastXY[0] || point.y != lastXY[1];
+        hasChanged = hasChanged();
 
         if (hasChanged) { //update values in GUI if they changed since last check
-            updateGuiFieldValues();
+            requestGuiUpdate();
         }
 
-        lastXY = new double[]{point.x, point.y};
+        lastX = point.x;
+        lastY = point.y;
 
     }
 
@@ -90,7 +92,8 @@ public class PointField extends TunableField<Point> {
 
         setPipelineFieldValue(point);
 
-        lastXY = new double[]{point.x, point.y};
+        lastX = point.x;
+        lastY = point.y;
 
     }
 
@@ -106,7 +109,7 @@ public class PointField extends TunableField<Point> {
 
     @Override
     public boolean hasChanged() {
-        hasChanged = point.x != lastXY[0] || point.y != lastXY[1];
+        hasChanged = point.x != lastX || point.y != lastY;
         return hasChanged;
     }
 
@@ -54,14 +54,14 @@ class RectField(instance: OpenCvPipeline, reflectionField: Field, eocvSim: EOCVS
 
     override fun update() {
         if(hasChanged()){
-            initialRect = reflectionField.get(pipeline) as Rect
+            initialRect = fieldAccessor.get(pipeline) as Rect
 
             rect[0] = initialRect.x.toDouble()
             rect[1] = initialRect.y.toDouble()
             rect[2] = initialRect.width.toDouble()
             rect[3] = initialRect.height.toDouble()
 
-            updateGuiFieldValues()
+            requestGuiUpdate()
         }
     }
 
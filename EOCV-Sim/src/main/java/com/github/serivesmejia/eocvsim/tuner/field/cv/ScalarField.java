@@ -58,19 +58,14 @@ public class ScalarField extends TunableField<Scalar> {
 
     @Override
     public void update() {
-        try {
-            scalar = (Scalar) reflectionField.get(pipeline);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        }
+        scalar = (Scalar) fieldAccessor.get(pipeline);
 
         hasChanged = !Arrays.equals(scalar.val, lastVal);
 
         if (hasChanged) { //update values in GUI if they changed since last check
-            updateGuiFieldValues();
+            requestGuiUpdate();
+            saveLastVal();
         }
-
-        lastVal = scalar.val.clone();
     }
 
     @Override
@@ -90,7 +85,17 @@ public class ScalarField extends TunableField<Scalar> {
 
         setPipelineFieldValue(scalar);
 
-        lastVal = scalar.val.clone();
+        saveLastVal();
+    }
+
+    //copies into the last values array instead of cloning,
+    //only allocating if the size of the scalar changed
+    private void saveLastVal() {
+        if (lastVal.length != scalar.val.length) {
+            lastVal = new double[scalar.val.length];
+        }
+
+        System.arraycopy(scalar.val, 0, lastVal, 0, lastVal.length);
     }
 
     @Override
@@ -55,6 +55,16 @@ public class DoubleField extends NumericField<Double> {
 
     }
 
+    @Override
+    protected boolean pollValue() {
+        double current = fieldAccessor.isPrimitive() ? fieldAccessor.getDouble(pipeline) : (Double) fieldAccessor.get(pipeline);
+        if (current == beforeValue) return false;
+
+        value = current;
+        beforeValue = current;
+        return true;
+    }
+
     @Override
     public boolean hasChanged() {
         boolean hasChanged = value != beforeValue;
@@ -55,6 +55,16 @@ public class FloatField extends NumericField<Float> {
 
     }
 
+    @Override
+    protected boolean pollValue() {
+        float current = fieldAccessor.isPrimitive() ? fieldAccessor.getFloat(pipeline) : (Float) fieldAccessor.get(pipeline);
+        if (current == beforeValue) return false;
+
+        value = current;
+        beforeValue = current;
+        return true;
+    }
+
     @Override
     public boolean hasChanged() {
         boolean hasChanged = value != beforeValue;
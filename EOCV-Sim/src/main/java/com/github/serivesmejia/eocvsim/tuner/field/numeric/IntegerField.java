@@ -53,6 +53,16 @@ public class IntegerField extends NumericField<Integer> {
         beforeValue = value;
     }
 
+    @Override
+    protected boolean pollValue() {
+        int current = fieldAccessor.isPrimitive() ? fieldAccessor.getInt(pipeline) : (Integer) fieldAccessor.get(pipeline);
+        if (current == beforeValue) return false;
+
+        value = current;
+        beforeValue = current;
+        return true;
+    }
+
     @Override
     public boolean hasChanged() {
         boolean hasChanged = value != beforeValue;
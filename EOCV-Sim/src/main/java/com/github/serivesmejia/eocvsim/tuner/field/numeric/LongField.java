@@ -53,6 +53,16 @@ public class LongField extends NumericField<Long> {
         beforeValue = value;
     }
 
+    @Override
+    protected boolean pollValue() {
+        long current = fieldAccessor.isPrimitive() ? fieldAccessor.getLong(pipeline) : (Long) fieldAccessor.get(pipeline);
+        if (current == beforeValue) return false;
+
+        value = current;
+        beforeValue = current;
+        return true;
+    }
+
     @Override
     public boolean hasChanged() {
         boolean hasChanged = value != beforeValue;
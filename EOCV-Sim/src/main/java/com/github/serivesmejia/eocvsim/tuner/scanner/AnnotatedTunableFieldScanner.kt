@@ -25,6 +25,7 @@ package com.github.serivesmejia.eocvsim.tuner.scanner
 
 import com.github.serivesmejia.eocvsim.tuner.TunableField
 import com.github.serivesmejia.eocvsim.tuner.TunableFieldAcceptor
+import com.github.serivesmejia.eocvsim.util.ClasspathScanIndex
 import com.github.serivesmejia.eocvsim.util.Log
 import com.github.serivesmejia.eocvsim.util.ReflectUtil
 import io.github.classgraph.ClassGraph
@@ -38,23 +39,42 @@ class AnnotatedTunableFieldScanner(private val lookInPackage: String) {
                           val acceptors: HashMap<Class<out TunableField<*>>, Class<out TunableFieldAcceptor>>)
 
     fun scan(): ScanResult {
-        val tunableFields = HashMap<Type, Class<out TunableField<*>>>()
+        val tunableFieldsKey = "tunableFields:$lookInPackage"
+        val acceptorsKey = "tunableFieldAcceptors:$lookInPackage"
 
-        Log.info("AnnotatedTunableFieldScanner", "Scanning in $lookInPackage...")
-        Log.blank()
+        var tunableFieldClassNames = ClasspathScanIndex.get(tunableFieldsKey)
+        var acceptorClassNames = ClasspathScanIndex.get(acceptorsKey)
+
+        if(tunableFieldClassNames != null && acceptorClassNames != null) {
+            //the classpath didn't change since the last scan, use its results
+            Log.info("AnnotatedTunableFieldScanner", "Using the TunableFields found in the last scan of $lookInPackage")
+            Log.blank()
+        } else {
+            Log.info("AnnotatedTunableFieldScanner", "Scanning in $lookInPackage...")
+            Log.blank()
 
-        //Scan for all classes in the specified package
-        val classGraph = ClassGraph().enableAnnotationInfo().acceptPackages(lookInPackage)
-        val result = classGraph.scan()
+            //Scan for all classes in the specified package
+            val classGraph = ClassGraph().enableAnnotationInfo().acceptPackages(lookInPackage)
+            val result = classGraph.scan()
+
+            tunableFieldClassNames = result.getClassesWithAnnotation(RegisterTunableField::class.java.name).names
+            acceptorClassNames = result.getClassesWithAnnotation(RegisterTunableFieldAcceptor::class.java.name).names
+
+            ClasspathScanIndex.put(tunableFieldsKey, tunableFieldClassNames)
+            ClasspathScanIndex.put(acceptorsKey, acceptorClassNames)
+        }
 
         //SCANNING FOR TUNABLE FIELDS
 
-        for (classInfo in result.getClassesWithAnnotation(RegisterTunableField::class.java.name)) {
+        val tunableFields = HashMap<Type, Class<out TunableField<*>>>()
+
+        for (className in tunableFieldClassNames!!) {
             try {
                 val foundClass: Class<*> = try {
-                    Class.forName(classInfo.name)
+                    Class.forName(className)
                 } catch (ex: ClassNotFoundException) {
-                    Log.error("AnnotatedTunableFieldScanner", "Unable to find class ${classInfo.name}", ex)
+                    Log.error("AnnotatedTunableFieldScanner", "Unable to find class $className", ex)
+                    ClasspathScanIndex.invalidate(tunableFieldsKey)
                     continue  //continue because we couldn't get the class...
                 }
 
@@ -70,7 +90,7 @@ class AnnotatedTunableFieldScanner(private val lookInPackage: String) {
 
                 tunableFields[type] = foundClassTunableField
             } catch (ex: Exception) {
-                Log.warn("AnnotatedTunableFieldScanner", "Error while processing " + classInfo.name, ex)
+                Log.warn("AnnotatedTunableFieldScanner", "Error while processing $className", ex)
             }
         }
 
@@ -81,11 +101,12 @@ class AnnotatedTunableFieldScanner(private val lookInPackage: String) {
 
         val acceptors = HashMap<Class<out TunableField<*>>, Class<out TunableFieldAcceptor>>()
 
-        for (classInfo in result.getClassesWithAnnotation(RegisterTunableFieldAcceptor::class.java.name)) {
+        for (className in acceptorClassNames!!) {
             val foundClass: Class<*> = try {
-                Class.forName(classInfo.name)
+                Class.forName(className)
             } catch (ex: ClassNotFoundException) {
-                Log.error("AnnotatedTunableFieldScanner", "Unable to find class ${classInfo.name}", ex)
+                Log.error("AnnotatedTunableFieldScanner", "Unable to find class $className", ex)
+                ClasspathScanIndex.invalidate(acceptorsKey)
                 continue  //continue because we couldn't get the class...
             }
 
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.tuner.sweep
+
+import com.github.serivesmejia.eocvsim.pipeline.PipelineManager
+import com.github.serivesmejia.eocvsim.tuner.TunableField
+import com.github.serivesmejia.eocvsim.tuner.TunerManager
+import com.github.serivesmejia.eocvsim.util.Log
+import org.firstinspires.ftc.robotcore.external.Telemetry
+import org.opencv.core.Mat
+import org.openftc.easyopencv.OpenCvPipeline
+import org.openftc.easyopencv.TimestampedPipelineHandler
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Evaluates every combination of the values of the given parameters
+ * (their cartesian product) over the same set of frames. Each combination
+ * runs on its own instance of the pipeline, with its TunableFields set to
+ * the combination values, in a pool of worker threads.
+ *
+ * The score of a combination is the mean of the numeric telemetry value
+ * with the given caption, over all the frames in which the pipeline
+ * reported it (the pipeline has to call telemetry.update() for it to be read)
+ */
+class ParameterSweep @JvmOverloads constructor(
+    private val pipelineManager: PipelineManager,
+    private val tunerManager: TunerManager,
+    val pipelineClass: Class<out OpenCvPipeline>,
+    val parameters: List<SweepParameter>,
+    val scoreCaption: String,
+    val threads: Int = Runtime.getRuntime().availableProcessors()
+) {
+
+    companion object {
+        private const val TAG = "ParameterSweep"
+    }
+
+    private val workerCount = AtomicInteger(0)
+    private val finishedCount = AtomicInteger(0)
+
+    /**
+     * Amount of combinations which will be evaluated
+     */
+    val combinationCount: Long = parameters.fold(1L) { acc, p -> acc * p.values.size }
+
+    /**
+     * Runs all of the combinations over the given frames, blocking until all
+     * of them finished. The frames are only read, a copy is given to the pipelines.
+     *
+     * @return a result per combination, in the same order as their values were given
+     * @throws IllegalArgumentException if a parameter doesn't match any TunableField of the pipeline
+     */
+    fun run(frames: List<Mat>): List<Result> {
+        validateParameters()
+
+        require(combinationCount <= Int.MAX_VALUE) { "Too many combinations to sweep ($combinationCount)" }
+
+        Log.info(TAG, "Sweeping $combinationCount combination(s) of ${parameters.joinToString(", ")} over ${frames.size} frame(s), in ${threads.coerceAtLeast(1)} thread(s)")
+
+        val executor = Executors.newFixedThreadPool(threads.coerceAtLeast(1)) { runnable ->
+            Thread(runnable, "ParameterSweep-Worker-${workerCount.incrementAndGet()}").apply {
+                isDaemon = true
+            }
+        }
+
+        finishedCount.set(0)
+
+        val futures = ArrayList<Future<Result>>()
+
+        try {
+            for(i in 0 until combinationCount.toInt()) {
+                val values = combinationAt(i)
+                futures.add(executor.submit<Result> { evaluate(values, frames) })
+            }
+
+            return futures.map {
+                try {
+                    it.get()
+                } catch(ex: ExecutionException) {
+                    throw ex.cause ?: ex
+                }
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    //decodes the combination index as a mixed radix number,
+    //where each digit is the value index of one parameter
+    private fun combinationAt(index: Int): List<String> {
+        val values = ArrayList<String>(parameters.size)
+        var remaining = index
+
+        for(parameter in parameters.asReversed()) {
+            values.add(parameter.values[remaining % parameter.values.size])
+            remaining /= parameter.values.size
+        }
+
+        values.reverse()
+        return values
+    }
+
+    private fun validateParameters() {
+        val fields = tunerManager.createFieldsFor(
+            pipelineManager.instantiatePipeline(pipelineClass, Telemetry())
+        ).associateBy { it.fieldName }
+
+        for(parameter in parameters) {
+            val field = fields[parameter.fieldName]
+                ?: throw IllegalArgumentException("Pipeline ${pipelineClass.simpleName} doesn't have a tunable field named ${parameter.fieldName}")
+
+            val guiFieldCount = field.guiFieldAmount.coerceAtLeast(field.guiComboBoxAmount)
+            require(parameter.index in 0 until guiFieldCount) {
+                "Field ${parameter.fieldName} of pipeline ${pipelineClass.simpleName} doesn't have an index ${parameter.index}"
+            }
+        }
+    }
+
+    private fun evaluate(values: List<String>, frames: List<Mat>): Result {
+        val telemetry = Telemetry()
+        val inputMat = Mat()
+
+        var scoreSum = 0.0
+        var scoredFrames = 0
+
+        try {
+            val pipeline = pipelineManager.instantiatePipeline(pipelineClass, telemetry)
+            val fields = tunerManager.createFieldsFor(pipeline).associateBy { it.fieldName }
+
+            for((i, parameter) in parameters.withIndex()) {
+                applyValue(fields[parameter.fieldName]!!, parameter.index, values[i])
+            }
+
+            val timestampedPipelineHandler = TimestampedPipelineHandler()
+
+            for((i, frame) in frames.withIndex()) {
+                if(Thread.currentThread().isInterrupted) break
+
+                frame.copyTo(inputMat)
+                if(i == 0) pipeline.init(inputMat)
+
+                timestampedPipelineHandler.update(pipeline)
+                pipeline.processFrame(inputMat)
+
+                parseScore(telemetry.toString())?.let {
+                    scoreSum += it
+                    scoredFrames++
+                }
+            }
+        } catch(ex: Exception) {
+            Log.error(TAG, "Error while evaluating combination $values", ex)
+            return Result(values, Double.NaN, scoredFrames, ex.toString()).also { reportProgress() }
+        } finally {
+            inputMat.release()
+        }
+
+        val score = if(scoredFrames > 0) scoreSum / scoredFrames else Double.NaN
+        return Result(values, score, scoredFrames, null).also { reportProgress() }
+    }
+
+    private fun applyValue(field: TunableField<*>, index: Int, value: String) {
+        //fields which only have a combo box (enums, booleans) take their values from there
+        if(field.guiFieldAmount == 0) {
+            field.setGuiComboBoxValue(index, value)
+        } else {
+            field.setGuiFieldValue(index, value)
+        }
+    }
+
+    private fun parseScore(telemetry: String): Double? {
+        for(line in telemetry.split("\n")) {
+            if(!line.startsWith(scoreCaption)) continue
+
+            var value = line.substring(scoreCaption.length).trim()
+            if(!value.startsWith(":")) continue
+            value = value.substring(1).trim()
+
+            return when(value.toLowerCase()) {
+                "true" -> 1.0
+                "false" -> 0.0
+                else -> value.toDoubleOrNull()
+            }
+        }
+
+        return null
+    }
+
+    private fun reportProgress() {
+        val finished = finishedCount.incrementAndGet()
+        val step = (combinationCount / 10).coerceAtLeast(1)
+
+        if(finished % step == 0L || finished.toLong() == combinationCount) {
+            Log.info(TAG, "Evaluated $finished/$combinationCount combination(s)")
+        }
+    }
+
+    /**
+     * @param values the value of each parameter, in the same order as the parameters
+     * @param score the mean score, or NaN if the caption wasn't found in any frame
+     * @param scoredFrames the amount of frames in which the score caption was found
+     * @param error the exception thrown by the pipeline, if any
+     */
+    data class Result(val values: List<String>, val score: Double, val scoredFrames: Int, val error: String?)
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.tuner.sweep
+
+import java.math.BigDecimal
+
+/**
+ * A single dimension of a parameter sweep, the list of values
+ * which will be given to one gui field of a TunableField.
+ *
+ * @param fieldName the name of the public field in the pipeline
+ * @param index the gui field index, e.g the channel of a Scalar
+ * @param values the values, as they would be typed in the tuner panel
+ */
+class SweepParameter(val fieldName: String, val index: Int, val values: List<String>) {
+
+    companion object {
+        /**
+         * Parses a parameter from a string in the `name[index]=start:end[:step]`
+         * format (an inclusive range) or the `name[index]=a,b,c` format (a list).
+         * The index is optional and defaults to 0.
+         *
+         * @throws IllegalArgumentException if the string isn't in a valid format
+         */
+        @JvmStatic fun parse(spec: String): SweepParameter {
+            val equalsIndex = spec.indexOf('=')
+            require(equalsIndex > 0) { "Sweep parameter \"$spec\" should be in the name=start:end[:step] or name=a,b,c format" }
+
+            var name = spec.substring(0, equalsIndex).trim()
+            val valuesSpec = spec.substring(equalsIndex + 1).trim()
+
+            var index = 0
+            if(name.endsWith("]")) {
+                val bracketIndex = name.indexOf('[')
+                require(bracketIndex > 0) { "Invalid field index in sweep parameter \"$spec\"" }
+
+                index = name.substring(bracketIndex + 1, name.length - 1).trim().toIntOrNull()
+                        ?: throw IllegalArgumentException("Invalid field index in sweep parameter \"$spec\"")
+                name = name.substring(0, bracketIndex).trim()
+            }
+
+            val values = if(valuesSpec.contains(':')) {
+                parseRange(spec, valuesSpec)
+            } else {
+                valuesSpec.split(",").map { it.trim() }.filter { it.isNotEmpty() }
+            }
+
+            require(values.isNotEmpty()) { "Sweep parameter \"$spec\" doesn't have any values" }
+
+            return SweepParameter(name, index, values)
+        }
+
+        private fun parseRange(spec: String, rangeSpec: String): List<String> {
+            val parts = rangeSpec.split(":").map { it.trim().toBigDecimalOrNull() }
+            require(parts.size in 2..3 && parts.all { it != null }) { "Invalid range in sweep parameter \"$spec\"" }
+
+            val start = parts[0]!!
+            val end = parts[1]!!
+            val step = if(parts.size == 3) parts[2]!! else BigDecimal.ONE
+
+            require(step.signum() > 0) { "The step of sweep parameter \"$spec\" should be greater than zero" }
+
+            val values = ArrayList<String>()
+            val direction = if(end < start) -1 else 1
+
+            //computed as start + i * step instead of accumulating the
+            //step, to avoid carrying rounding errors into the values
+            var i = 0
+            while(true) {
+                val value = start + step * BigDecimal(i * direction)
+                if((direction == 1 && value > end) || (direction == -1 && value < end)) break
+
+                values.add(value.stripTrailingZeros().toPlainString())
+                i++
+            }
+
+            return values
+        }
+    }
+
+    override fun toString() = if(index == 0) fieldName else "$fieldName[$index]"
+
+}
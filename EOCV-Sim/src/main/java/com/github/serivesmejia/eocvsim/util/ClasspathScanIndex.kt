@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.util
+
+import com.github.serivesmejia.eocvsim.EOCVSim
+import com.google.gson.Gson
+import java.io.File
+import java.nio.file.Files
+import java.security.MessageDigest
+
+/**
+ * On-disk index of the results of the classpath scans (the found pipelines,
+ * tunable fields and acceptors), so that they can be skipped when starting
+ * again with the exact same classpath. The index is keyed by a fingerprint
+ * of the classpath, made from the path, size and modification time of every
+ * jar and of every file inside the classpath directories, so recompiling
+ * or adding a class invalidates it.
+ */
+object ClasspathScanIndex {
+
+    private const val TAG = "ClasspathScanIndex"
+
+    //increased whenever the meaning of the stored entries changes
+    private const val INDEX_VERSION = 1
+
+    const val INDEX_SAVEFILE_NAME = "eocvsim_scan_index.json"
+    @JvmField val INDEX_SAVEFILE = File(SysUtil.getAppData(), INDEX_SAVEFILE_NAME)
+
+    private val gson = Gson()
+
+    /**
+     * Fingerprint of the current classpath, only computed once
+     */
+    val classpathFingerprint by lazy { computeFingerprint() }
+
+    private var index: Index? = null
+
+    /**
+     * @return the class names stored with the given key, or null if they
+     *         weren't stored or if they were stored with a different classpath
+     */
+    @Synchronized fun get(key: String): List<String>? {
+        return loadIndex().entries[key]
+    }
+
+    /**
+     * Stores the class names found by a scan, saving the index to disk
+     */
+    @Synchronized fun put(key: String, classNames: List<String>) {
+        val index = loadIndex()
+        index.entries[key] = ArrayList(classNames)
+
+        if(!SysUtil.saveFileStr(INDEX_SAVEFILE, gson.toJson(index))) {
+            Log.warn(TAG, "Unable to save the scan index to ${INDEX_SAVEFILE.absolutePath}")
+        }
+    }
+
+    /**
+     * Removes the entry of the given key, used when a stored
+     * class couldn't be loaded so that it's scanned again
+     */
+    @Synchronized fun invalidate(key: String) {
+        val index = loadIndex()
+        if(index.entries.remove(key) != null) {
+            SysUtil.saveFileStr(INDEX_SAVEFILE, gson.toJson(index))
+        }
+    }
+
+    private fun loadIndex(): Index {
+        index?.let { return it }
+
+        var loadedIndex: Index? = null
+
+        if(INDEX_SAVEFILE.exists()) {
+            try {
+                loadedIndex = gson.fromJson(SysUtil.loadFileStr(INDEX_SAVEFILE), Index::class.java)
+            } catch(ex: Exception) {
+                Log.warn(TAG, "Unable to parse the scan index, it will be recreated", ex)
+            }
+        }
+
+        val fingerprint = classpathFingerprint
+
+        val newIndex = if(loadedIndex?.entries == null || loadedIndex.version != INDEX_VERSION || loadedIndex.fingerprint != fingerprint) {
+            if(loadedIndex != null) {
+                Log.info(TAG, "The classpath changed since the last scan, the scan index will be recreated")
+            }
+
+            Index(INDEX_VERSION, fingerprint, HashMap())
+        } else loadedIndex
+
+        index = newIndex
+        return newIndex
+    }
+
+    private fun computeFingerprint(): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+
+        fun update(str: String) = digest.update(str.toByteArray(Charsets.UTF_8))
+
+        update(EOCVSim.VERSION)
+
+        val classpath = System.getProperty("java.class.path") ?: ""
+
+        for(entry in classpath.split(File.pathSeparator)) {
+            if(entry.isBlank()) continue
+            val file = File(entry).absoluteFile
+
+            update("\n" + file.path)
+
+            if(file.isDirectory) {
+                //stat every file instead of reading it, which is way
+                //cheaper than what a scan does but still catches changes
+                try {
+                    Files.walk(file.toPath()).use { paths ->
+                        paths.sorted().forEach { path ->
+                            val pathFile = path.toFile()
+                            if(pathFile.isFile) {
+                                update("|${path}:${pathFile.length()}:${pathFile.lastModified()}")
+                            }
+                        }
+                    }
+                } catch(ex: Exception) {
+                    //make sure this fingerprint won't match a previous one
+                    update("|${System.nanoTime()}")
+                    Log.warn(TAG, "Unable to walk classpath directory ${file.path}", ex)
+                }
+            } else if(file.isFile) {
+                update(":${file.length()}:${file.lastModified()}")
+            }
+        }
+
+        return digest.digest().joinToString("") { String.format("%02x", it) }
+    }
+
+    private class Index(
+        val version: Int,
+        val fingerprint: String,
+        val entries: HashMap<String, List<String>>
+    )
+
+}
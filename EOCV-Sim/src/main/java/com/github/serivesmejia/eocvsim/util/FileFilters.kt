@@ -35,4 +35,8 @@ object FileFilters {
 
     @JvmField var recordedVideoFilter = FileNameExtensionFilter("AVI (*.avi)", "avi")
 
+    @JvmField var rawCaptureFilter = FileNameExtensionFilter("Raw capture (*.eocvraw)", "eocvraw")
+
+    @JvmField var telemetryCaptureFilter = FileNameExtensionFilter("Telemetry capture (*.ndjson, *.csv)", "ndjson", "jsonl", "csv")
+
 }
\ No newline at end of file
@@ -66,7 +66,8 @@ public class Log {
     static public boolean TRACE = level <= LEVEL_TRACE;
     static private Logger logger = new Logger();
 
-    public static final StringBuilder fullLogs = new StringBuilder();
+    //messages are logged from several threads at the same time, so it has to be synchronized
+    public static final StringBuffer fullLogs = new StringBuffer();
 
     private Log() {
     }
@@ -270,8 +271,11 @@ public class Log {
          * Prints the message to System.out. Called by the default implementation of {@link #log(int, String, String, Throwable)}.
          */
         protected void print(String message) {
-            fullLogs.append(message + "\n");
-            System.out.println(message);
+            //keep the order of both outputs the same
+            synchronized (fullLogs) {
+                fullLogs.append(message).append('\n');
+                System.out.println(message);
+            }
         }
     }
 }
\ No newline at end of file
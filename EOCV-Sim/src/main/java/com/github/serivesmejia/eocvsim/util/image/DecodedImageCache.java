@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.util.image;
+
+import com.github.serivesmejia.eocvsim.util.SysUtil;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Least recently used cache of decoded images, already resized and converted,
+ * keyed by the file path, the size of the mat and the last modified time of
+ * the file (so that edited images are decoded again). The cache is bounded
+ * by the total bytes of the cached mats instead of their count.
+ */
+public class DecodedImageCache {
+
+    public static final long DEFAULT_MAX_BYTES = 256L * SysUtil.MB;
+
+    private static final DecodedImageCache sharedCache = new DecodedImageCache(DEFAULT_MAX_BYTES);
+
+    //access ordered, the first entry is the least recently used
+    private final LinkedHashMap<Key, Mat> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long maxBytes;
+    private long currentBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    public DecodedImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static DecodedImageCache getShared() {
+        return sharedCache;
+    }
+
+    /**
+     * Copies the cached image to the given mat, if there's any
+     * @return false if the image isn't cached, or the file changed since
+     */
+    public synchronized boolean copyTo(String path, Size size, Mat dst) {
+        Mat cached = entries.get(new Key(path, size));
+
+        if (cached == null) {
+            misses++;
+            return false;
+        }
+
+        hits++;
+        cached.copyTo(dst);
+
+        return true;
+    }
+
+    /**
+     * Stores a copy of the given decoded image, keyed by its size
+     */
+    public synchronized void put(String path, Mat decoded) {
+        if (decoded == null || decoded.empty()) return;
+
+        long bytes = bytesOf(decoded);
+        if (bytes > maxBytes) return; //wouldn't fit even if the cache was empty
+
+        Key key = new Key(path, decoded.size());
+
+        Mat previous = entries.remove(key);
+        if (previous != null) {
+            currentBytes -= bytesOf(previous);
+            previous.release();
+        }
+
+        entries.put(key, decoded.clone());
+        currentBytes += bytes;
+
+        evictToFit();
+    }
+
+    public synchronized void clear() {
+        for (Mat mat : entries.values()) {
+            mat.release();
+        }
+
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private void evictToFit() {
+        Iterator<Map.Entry<Key, Mat>> iterator = entries.entrySet().iterator();
+
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Mat evicted = iterator.next().getValue();
+            iterator.remove();
+
+            currentBytes -= bytesOf(evicted);
+            evicted.release();
+        }
+    }
+
+    private static long bytesOf(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+
+    private static final class Key {
+        final String path;
+        final double width;
+        final double height;
+        final long lastModified;
+
+        Key(String path, Size size) {
+            File file = new File(path);
+
+            this.path = file.getAbsolutePath();
+            this.width = size == null ? 0 : size.width;
+            this.height = size == null ? 0 : size.height;
+            this.lastModified = file.lastModified();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+
+            return width == key.width && height == key.height &&
+                    lastModified == key.lastModified && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, width, height, lastModified);
+        }
+    }
+
+}
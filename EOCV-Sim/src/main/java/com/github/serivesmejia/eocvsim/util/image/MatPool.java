@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.util.image;
+
+import com.github.serivesmejia.eocvsim.util.Log;
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of mats keyed by their rows, cols and type, so that a taken mat
+ * already has the geometry it's going to be written with and OpenCV doesn't
+ * reallocate its native buffer on copyTo(), read(), resize()... Mats are put
+ * back under the geometry they have when they're returned, so a source which
+ * switches between sizes keeps mats for each one of them. Each key has a cap
+ * of mats which can be checked out at the same time, the default one given to
+ * the constructor unless it's overridden for that key with setCap(), and the
+ * mats that sat unused in the pool for longer than the idle timeout are released.
+ */
+public class MatPool {
+
+    public enum Policy {
+        /**
+         * take() waits until a mat of the same key is returned
+         */
+        BLOCK,
+        /**
+         * take() allocates an extra mat, which is released instead
+         * of pooled when it's returned if the key is already full
+         */
+        GROW
+    }
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 10_000;
+
+    //idle mats are looked for at most this often, when taking or returning
+    private static final long EVICTION_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final int defaultCap;
+    private final Policy policy;
+    private final long idleTimeoutNanos;
+
+    private final HashMap<Key, Bucket> buckets = new HashMap<>();
+    //kept apart from the buckets since those are removed once they're empty
+    private final HashMap<Key, Integer> caps = new HashMap<>();
+    //reused to look up the buckets without allocating a key every time
+    private final Key lookupKey = new Key(0, 0, 0);
+
+    private long lastEvictionCheckNanos = System.nanoTime();
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long nativeBytes = 0;
+
+    public MatPool(String name, int defaultCap, Policy policy, long idleTimeoutMs) {
+        checkCap(defaultCap);
+
+        this.name = name;
+        this.defaultCap = defaultCap;
+        this.policy = policy;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+    }
+
+    public MatPool(String name, int defaultCap, Policy policy) {
+        this(name, defaultCap, policy, DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * Overrides the cap of checked out mats for the given geometry. If it's lowered, the
+     * mats which are already checked out are kept, but they're released when returned
+     * until the key is below the new cap again
+     */
+    public synchronized void setCap(int rows, int cols, int type, int cap) {
+        checkCap(cap);
+
+        Key key = new Key(rows, cols, type);
+        caps.put(key, cap);
+
+        Bucket bucket = buckets.get(key);
+
+        if (bucket != null) {
+            bucket.cap = cap;
+
+            while (bucket.checkedOut + bucket.available.size() > cap && !bucket.available.isEmpty()) {
+                release(bucket.available.pollLast());
+            }
+        }
+
+        notifyAll(); //the cap might have been raised for a key someone is waiting on
+    }
+
+    public synchronized int getCap(int rows, int cols, int type) {
+        lookupKey.rows = rows;
+        lookupKey.cols = cols;
+        lookupKey.type = type;
+
+        Integer cap = caps.get(lookupKey);
+        return cap != null ? cap : defaultCap;
+    }
+
+    /**
+     * Takes a mat with the given geometry, reusing a pooled one if possible.
+     * If the cap of checked out mats for this key was reached, this blocks
+     * or allocates a new mat depending on the policy. If the thread gets
+     * interrupted while blocked, a new mat is allocated anyways and the
+     * interrupted flag is kept for the caller to handle it.
+     */
+    public synchronized PooledMat take(int rows, int cols, int type) {
+        evictIdleIfDue();
+
+        Bucket bucket = bucketFor(rows, cols, type);
+
+        if (policy == Policy.BLOCK) {
+            try {
+                while (bucket.checkedOut >= bucket.cap) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return checkOut(bucket);
+    }
+
+    /**
+     * Takes a mat with the same geometry as the given one
+     */
+    public PooledMat take(Mat like) {
+        return take(like.rows(), like.cols(), like.type());
+    }
+
+    /**
+     * Takes a mat with the given geometry without blocking nor
+     * growing, regardless of the policy of this pool
+     * @return null if the cap of checked out mats for this key was reached
+     */
+    public synchronized PooledMat tryTake(int rows, int cols, int type) {
+        evictIdleIfDue();
+
+        Bucket bucket = bucketFor(rows, cols, type);
+        if (bucket.checkedOut >= bucket.cap) return null;
+
+        return checkOut(bucket);
+    }
+
+    public PooledMat tryTake(Mat like) {
+        return tryTake(like.rows(), like.cols(), like.type());
+    }
+
+    /**
+     * Releases the mats which weren't used in the idle timeout
+     */
+    public synchronized void evictIdle() {
+        long now = System.nanoTime();
+        lastEvictionCheckNanos = now;
+
+        Iterator<Bucket> iterator = buckets.values().iterator();
+
+        while (iterator.hasNext()) {
+            Bucket bucket = iterator.next();
+
+            //the oldest returned mats are at the end
+            PooledMat oldest;
+            while ((oldest = bucket.available.peekLast()) != null && now - oldest.returnedNanos > idleTimeoutNanos) {
+                bucket.available.pollLast();
+                release(oldest);
+                evictions++;
+            }
+
+            if (bucket.available.isEmpty() && bucket.checkedOut == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases all of the pooled mats, the ones which are currently
+     * checked out are still pooled when they're returned
+     */
+    public synchronized void releaseAll() {
+        Iterator<Bucket> iterator = buckets.values().iterator();
+
+        while (iterator.hasNext()) {
+            Bucket bucket = iterator.next();
+
+            PooledMat mat;
+            while ((mat = bucket.available.poll()) != null) {
+                release(mat);
+            }
+
+            if (bucket.checkedOut == 0) iterator.remove();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the bytes of the data of all the mats owned by this pool, both pooled
+     *         and checked out, as of the last time each one was taken or returned
+     */
+    public synchronized long getNativeBytes() {
+        return nativeBytes;
+    }
+
+    public synchronized int getCheckedOutAmount() {
+        int amount = 0;
+
+        for (Bucket bucket : buckets.values()) {
+            amount += bucket.checkedOut;
+        }
+
+        return amount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MatPool(" + name + ", " + hits + " hits, " + misses + " misses, " +
+                evictions + " evictions, " + nativeBytes + " native bytes)";
+    }
+
+    private Bucket bucketFor(int rows, int cols, int type) {
+        lookupKey.rows = rows;
+        lookupKey.cols = cols;
+        lookupKey.type = type;
+
+        Bucket bucket = buckets.get(lookupKey);
+
+        if (bucket == null) {
+            bucket = new Bucket(new Key(rows, cols, type), getCap(rows, cols, type));
+            buckets.put(bucket.key, bucket);
+        }
+
+        return bucket;
+    }
+
+    private PooledMat checkOut(Bucket bucket) {
+        PooledMat mat = bucket.available.pollFirst();
+
+        if (mat != null) {
+            hits++;
+        } else {
+            misses++;
+
+            mat = new PooledMat(bucket.key.rows, bucket.key.cols, bucket.key.type);
+            mat.accountedBytes = bytesOf(mat);
+            nativeBytes += mat.accountedBytes;
+        }
+
+        bucket.checkedOut++;
+
+        mat.bucket = bucket;
+        mat.checkedOut = true;
+        mat.refCount = 1;
+
+        return mat;
+    }
+
+    private synchronized void returnMat(PooledMat mat) {
+        if (!mat.checkedOut) {
+            throw new IllegalArgumentException("This mat has already been returned!");
+        }
+
+        mat.checkedOut = false;
+        mat.refCount = 0;
+
+        mat.bucket.checkedOut--;
+        mat.bucket = null;
+
+        //the mat might have been reallocated while it was checked out
+        long bytes = bytesOf(mat);
+        nativeBytes += bytes - mat.accountedBytes;
+        mat.accountedBytes = bytes;
+
+        //file it under the geometry it has now, since that's the one it'll be used with
+        Bucket bucket = mat.empty() ? null : bucketFor(mat.rows(), mat.cols(), mat.type());
+
+        if (bucket != null && bucket.checkedOut + bucket.available.size() < bucket.cap) {
+            mat.returnedNanos = System.nanoTime();
+            bucket.available.push(mat);
+        } else {
+            release(mat);
+        }
+
+        notifyAll(); //wake up the threads blocked in take()
+        evictIdleIfDue();
+    }
+
+    private void release(PooledMat mat) {
+        nativeBytes -= mat.accountedBytes;
+        mat.accountedBytes = 0;
+        mat.release();
+    }
+
+    private void evictIdleIfDue() {
+        if (System.nanoTime() - lastEvictionCheckNanos >= EVICTION_CHECK_INTERVAL_NANOS) {
+            evictIdle();
+        }
+    }
+
+    private static void checkCap(int cap) {
+        if (cap < 1) {
+            throw new IllegalArgumentException("The cap per key should be at least 1");
+        }
+    }
+
+    private static long bytesOf(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+
+    public final class PooledMat extends Mat {
+
+        private Bucket bucket = null;
+        private volatile boolean checkedOut = false;
+        private int refCount = 0;
+
+        private long accountedBytes = 0;
+        private long returnedNanos = 0;
+
+        private PooledMat(int rows, int cols, int type) {
+            super(rows, cols, type);
+        }
+
+        /**
+         * Adds a reference to this mat, so that it can be shared
+         * without copying. The mat will only go back to the pool
+         * once returnMat() is called by each one of its holders.
+         */
+        public PooledMat retain() {
+            synchronized (MatPool.this) {
+                if (!checkedOut) {
+                    throw new IllegalStateException("Tried to retain a Mat which isn't checked out");
+                }
+
+                refCount++;
+                return this;
+            }
+        }
+
+        public void returnMat() {
+            synchronized (MatPool.this) {
+                //someone else is still holding this mat
+                if (refCount > 1) {
+                    refCount--;
+                    return;
+                }
+
+                try {
+                    MatPool.this.returnMat(this);
+                } catch (IllegalArgumentException ex) {
+                    Log.warn("PooledMat", "Tried to return a Mat which was already returned to " + name, ex);
+                }
+            }
+        }
+
+        public boolean isCheckedOut() {
+            return checkedOut;
+        }
+
+    }
+
+    private static final class Bucket {
+        final Key key;
+        //pooled mats, the most recently returned first
+        final ArrayDeque<PooledMat> available = new ArrayDeque<>();
+        int checkedOut = 0;
+        int cap;
+
+        Bucket(Key key, int cap) {
+            this.key = key;
+            this.cap = cap;
+        }
+    }
+
+    private static final class Key {
+        int rows;
+        int cols;
+        int type;
+
+        Key(int rows, int cols, int type) {
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+
+            return rows == key.rows && cols == key.cols && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (rows * 31 + cols) * 31 + type;
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.util.profiler
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Fixed-size, lock-free histogram of latencies. Values are stored in
+ * microseconds in buckets which are linear inside each power of two
+ * (16 sub buckets each), so percentiles have an error of at most ~6%
+ * while recording a value costs only a couple of atomic increments.
+ */
+class LatencyHistogram {
+
+    companion object {
+        private const val SUB_BUCKET_BITS = 4
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        //enough powers of two to hold ~2^40 microseconds (12 days)
+        private const val MAX_EXPONENT = 40
+
+        private const val BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+
+        private fun bucketIndex(micros: Long): Int {
+            if(micros < SUB_BUCKETS) return micros.toInt()
+
+            val exponent = (63 - java.lang.Long.numberOfLeadingZeros(micros)).coerceAtMost(MAX_EXPONENT)
+            val subBucket = (micros ushr (exponent - SUB_BUCKET_BITS)).toInt() and (SUB_BUCKETS - 1)
+
+            return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket
+        }
+
+        //the middle value of the range covered by the bucket
+        private fun bucketValue(index: Int): Double {
+            if(index < SUB_BUCKETS) return index.toDouble()
+
+            val exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS
+            val subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS
+            val width = 1L shl (exponent - SUB_BUCKET_BITS)
+
+            return ((SUB_BUCKETS + subBucket) * width).toDouble() + width / 2.0
+        }
+    }
+
+    private val buckets = AtomicLongArray(BUCKETS)
+
+    private val totalCount = AtomicLong()
+    private val totalMicros = AtomicLong()
+    private val maxMicros = AtomicLong()
+
+    val count get() = totalCount.get()
+
+    val meanMillis: Double
+        get() {
+            val count = totalCount.get()
+            return if(count == 0L) 0.0 else totalMicros.get() / 1000.0 / count
+        }
+
+    val maxMillis get() = maxMicros.get() / 1000.0
+
+    fun record(nanos: Long) {
+        val micros = (nanos / 1000).coerceAtLeast(0)
+
+        buckets.incrementAndGet(bucketIndex(micros))
+        totalCount.incrementAndGet()
+        totalMicros.addAndGet(micros)
+
+        var max = maxMicros.get()
+        while(micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get()
+        }
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the approximate latency in milliseconds below which the
+     *         given percentage of the recorded values fall
+     */
+    fun percentileMillis(percentile: Double): Double {
+        val count = totalCount.get()
+        if(count == 0L) return 0.0
+
+        val target = Math.ceil(count * percentile / 100.0).toLong().coerceAtLeast(1)
+        var accumulated = 0L
+
+        for(i in 0 until BUCKETS) {
+            accumulated += buckets.get(i)
+            if(accumulated >= target) {
+                //the max is exact, so don't report more than it
+                return bucketValue(i).coerceAtMost(maxMicros.get().toDouble()) / 1000.0
+            }
+        }
+
+        return maxMillis
+    }
+
+    fun reset() {
+        for(i in 0 until BUCKETS) {
+            buckets.set(i, 0)
+        }
+
+        totalCount.set(0)
+        totalMicros.set(0)
+        maxMicros.set(0)
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.github.serivesmejia.eocvsim.util.profiler
+
+import com.github.serivesmejia.eocvsim.util.SysUtil
+import com.google.gson.GsonBuilder
+import java.io.File
+import java.util.*
+
+/**
+ * Records how long each stage of the main loop takes into a
+ * histogram per stage, which can then be exported as CSV or JSON
+ */
+class StageProfiler {
+
+    companion object {
+        private val gson = GsonBuilder().setPrettyPrinting().create()
+    }
+
+    private val histograms = LinkedHashMap<String, LatencyHistogram>()
+
+    //incremented on every reset, so that the stage handles know
+    //that the histogram they're holding on to was dropped
+    @Volatile private var generation = 0
+
+    //the stages measured on every frame, by the main loop and the pipeline workers
+    @JvmField val onMainUpdateStage   = Stage("onMainUpdate")
+    @JvmField val inputSourceStage    = Stage("inputSource")
+    @JvmField val tunerStage          = Stage("tuner")
+    @JvmField val pipelineStage       = Stage("pipeline")
+    @JvmField val pipelineInitStage   = Stage("pipelineInit")
+    @JvmField val processFrameStage   = Stage("processFrame")
+    @JvmField val telemetryPanelStage = Stage("telemetryPanel")
+    @JvmField val fpsLimiterStage     = Stage("fpsLimiter")
+
+    val stages: Array<String>
+        get() = synchronized(histograms) { histograms.keys.toTypedArray() }
+
+    fun histogram(stage: String) = synchronized(histograms) {
+        histograms.getOrPut(stage) { LatencyHistogram() }
+    }
+
+    fun record(stage: String, startNanos: Long) {
+        histogram(stage).record(System.nanoTime() - startNanos)
+    }
+
+    /**
+     * Creates a handle for the given stage, which records into its histogram
+     * without building the name nor looking it up every time (only the first time
+     * and after a reset), so recording through it takes no locks. Stages which are
+     * measured every frame should be measured through a handle instead of by name
+     */
+    fun stage(name: String) = Stage(name)
+
+    inline fun <T> measure(stage: String, block: () -> T): T {
+        val start = System.nanoTime()
+
+        try {
+            return block()
+        } finally {
+            record(stage, start)
+        }
+    }
+
+    inline fun <T> measure(stage: Stage, block: () -> T): T {
+        val start = System.nanoTime()
+
+        try {
+            return block()
+        } finally {
+            stage.record(start)
+        }
+    }
+
+    fun reset() = synchronized(histograms) {
+        histograms.clear()
+        generation++
+    }
+
+    fun summaries() = synchronized(histograms) {
+        histograms.map { (stage, histogram) ->
+            StageSummary(
+                stage, histogram.count, histogram.meanMillis,
+                histogram.percentileMillis(50.0), histogram.percentileMillis(95.0),
+                histogram.percentileMillis(99.0), histogram.maxMillis
+            )
+        }
+    }
+
+    fun toCsv(): String {
+        val csv = StringBuilder("stage,count,mean_ms,p50_ms,p95_ms,p99_ms,max_ms\n")
+
+        for(summary in summaries()) {
+            csv.append("\"${summary.stage}\",${summary.count},")
+            csv.append(String.format(Locale.ROOT, "%.3f,%.3f,%.3f,%.3f,%.3f", summary.meanMs, summary.p50Ms, summary.p95Ms, summary.p99Ms, summary.maxMs))
+            csv.append("\n")
+        }
+
+        return csv.toString()
+    }
+
+    fun toJson(): String = gson.toJson(summaries())
+
+    /**
+     * Saves the stages summary as JSON if the file name ends with
+     * ".json", or as CSV otherwise
+     */
+    fun saveTo(file: File) = SysUtil.saveFileStr(file,
+        if(file.extension.equals("json", true)) toJson() else toCsv()
+    )
+
+    inner class Stage internal constructor(val name: String) {
+        //the histogram and the generation it belongs to are swapped together,
+        //since the same stage might be recorded from several threads at once
+        @Volatile private var cached: CachedHistogram? = null
+
+        fun record(startNanos: Long) {
+            val currentGeneration = generation
+            var current = cached
+
+            if(current == null || current.generation != currentGeneration) {
+                current = CachedHistogram(this@StageProfiler.histogram(name), currentGeneration)
+                cached = current
+            }
+
+            current.histogram.record(System.nanoTime() - startNanos)
+        }
+    }
+
+    private class CachedHistogram(val histogram: LatencyHistogram, val generation: Int)
+
+    data class StageSummary(
+        val stage: String,
+        val count: Long,
+        val meanMs: Double,
+        val p50Ms: Double,
+        val p95Ms: Double,
+        val p99Ms: Double,
+        val maxMs: Double
+    )
+
+}
@@ -1,6 +1,7 @@
 package org.firstinspires.ftc.robotcore.external;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class Telemetry {
 
@@ -16,6 +17,8 @@ public class Telemetry {
 
     private boolean autoClear = true;
 
+    private volatile long updateCount = 0;
+
     public synchronized Item addData(String caption, String value) {
 
         Item item = new Item(caption, value);
@@ -97,6 +100,8 @@ public class Telemetry {
 
         if (autoClear) clear();
 
+        updateCount++;
+
     }
 
     private synchronized void evalLastTelem() {
@@ -176,13 +181,36 @@ public class Telemetry {
         this.autoClear = autoClear;
     }
 
+    /**
+     * @return the amount of times update() has been called, used
+     *         to know if there's new telemetry without consuming
+     *         the hasChanged() state
+     */
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * @return the items and lines of the last update, plus
+     *         the error item if there's an error being shown
+     */
+    public synchronized List<ItemOrLine> getLastItems() {
+        ArrayList<ItemOrLine> items = new ArrayList<>(lastTelem);
+
+        if (!errItem.caption.trim().equals("")) {
+            items.add(errItem);
+        }
+
+        return items;
+    }
+
     @Override
     public String toString() {
         evalLastTelem();
         return lastTelemUpdate;
     }
 
-    private interface ItemOrLine {
+    public interface ItemOrLine {
         String getCaption();
 
         void setCaption(String caption);
@@ -193,6 +221,7 @@ public class Telemetry {
         protected String caption = "";
 
         protected Func valueProducer = null;
+        protected Object rawValue = null;
 
         protected String valueSeparator = " : ";
 
@@ -214,10 +243,24 @@ public class Telemetry {
 
         public synchronized void setValue(Func func) {
             this.valueProducer = func;
+            this.rawValue = null;
         }
 
         public synchronized void setValue(Object value) {
             setValue(value.toString());
+
+            //keep numbers and booleans as they are for typed telemetry captures
+            if (value instanceof Number || value instanceof Boolean) {
+                this.rawValue = value;
+            }
+        }
+
+        /**
+         * @return the number or boolean given to setValue(Object),
+         *         or the string value of this item otherwise
+         */
+        public synchronized Object getValue() {
+            return rawValue != null ? rawValue : valueProducer.value().toString();
         }
 
         public synchronized void setValue(String value, Object... args) {
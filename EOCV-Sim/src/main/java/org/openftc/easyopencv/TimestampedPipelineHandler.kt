@@ -31,11 +31,22 @@ class TimestampedPipelineHandler {
 
     //update called from the attached pipelineManager onUpdate event handler
     fun update(currentPipeline: OpenCvPipeline?) {
-        if(currentPipeline is TimestampedOpenCvPipeline) {
-            currentPipeline.setTimestamp(elapsedTime.nanoseconds())
-        }
+        applyTimestamp(currentPipeline, nextTimestamp())
+    }
 
+    //takes the timestamp for a frame without giving it to the pipeline yet,
+    //used when the frame will be processed later in another thread
+    fun nextTimestamp(): Long {
+        val timestamp = elapsedTime.nanoseconds()
         elapsedTime.reset()
+
+        return timestamp
+    }
+
+    fun applyTimestamp(pipeline: OpenCvPipeline?, timestamp: Long) {
+        if(pipeline is TimestampedOpenCvPipeline) {
+            pipeline.setTimestamp(timestamp)
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.input.source;
+
+import com.github.serivesmejia.eocvsim.output.RawCaptureWriter;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RawCaptureSourceTest {
+
+    private static final long[] TIMESTAMPS = { 0L, 33_000_000L, 70_000_000L, 100_000_000L };
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void loadNativeLib() {
+        OpenCV.loadLocally();
+    }
+
+    private static Mat[] randomFrames() {
+        Mat[] frames = new Mat[TIMESTAMPS.length];
+
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new Mat(48, 64, CvType.CV_8UC3);
+            Core.randu(frames[i], 0, 256);
+        }
+
+        return frames;
+    }
+
+    private static byte[] bytesOf(Mat mat) {
+        byte[] bytes = new byte[(int) (mat.total() * mat.elemSize())];
+        mat.get(0, 0, bytes);
+
+        return bytes;
+    }
+
+    private File writeCapture(Mat[] frames, boolean compress) {
+        File file = tempDir.resolve("capture." + RawCaptureWriter.FILE_EXTENSION).toFile();
+
+        try (RawCaptureWriter writer = new RawCaptureWriter(file, compress)) {
+            for (int i = 0; i < frames.length; i++) {
+                writer.write(frames[i], TIMESTAMPS[i]);
+            }
+
+            assertEquals(frames.length, writer.getWrittenFrames());
+        }
+
+        return file;
+    }
+
+    private static RawCaptureSource openCapture(File file) {
+        RawCaptureSource source = new RawCaptureSource(file.getPath());
+        source.ignoreTimestamps = true;
+        source.playOnce = true;
+
+        assertTrue(source.init());
+
+        return source;
+    }
+
+    private void assertRoundTrip(boolean compress) {
+        Mat[] frames = randomFrames();
+        RawCaptureSource source = openCapture(writeCapture(frames, compress));
+
+        try {
+            assertEquals(frames.length, source.getFrameCount());
+
+            for (int i = 0; i < frames.length; i++) {
+                assertEquals(TIMESTAMPS[i], source.getFrameTimestampNanos(i));
+
+                Mat replayed = source.update();
+
+                assertNotNull(replayed);
+                assertEquals(frames[i].size(), replayed.size());
+                assertEquals(frames[i].type(), replayed.type());
+                assertArrayEquals(bytesOf(frames[i]), bytesOf(replayed), "Frame " + i + " isn't bit-exact");
+            }
+
+            assertFalse(source.hasEnded());
+
+            source.update();
+            assertTrue(source.hasEnded());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void uncompressedRoundTrip() {
+        assertRoundTrip(false);
+    }
+
+    @Test
+    public void compressedRoundTrip() {
+        assertRoundTrip(true);
+    }
+
+    @Test
+    public void loopsBackToTheFirstFrame() {
+        Mat[] frames = randomFrames();
+
+        RawCaptureSource source = openCapture(writeCapture(frames, false));
+        source.playOnce = false;
+
+        try {
+            for (int i = 0; i < frames.length; i++) {
+                source.update();
+            }
+
+            assertArrayEquals(bytesOf(frames[0]), bytesOf(source.update()));
+            assertFalse(source.hasEnded());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void sourcesLoadedByGsonPlayAsUsual() {
+        Mat[] frames = randomFrames();
+        File file = writeCapture(frames, true);
+
+        //created without running the constructor nor the field
+        //initializers, like the sources loaded from the saved ones
+        Gson gson = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+        RawCaptureSource source = gson.fromJson(gson.toJson(new RawCaptureSource(file.getPath())), RawCaptureSource.class);
+
+        assertFalse(source.playOnce);
+        assertFalse(source.ignoreTimestamps);
+
+        try {
+            assertTrue(source.init());
+            //the first frame is returned right away, regardless of its timestamp
+            assertArrayEquals(bytesOf(frames[0]), bytesOf(source.update()));
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void skipsATruncatedLastFrame() throws IOException {
+        Mat[] frames = randomFrames();
+        File file = writeCapture(frames, false);
+
+        //as if the capture was interrupted while writing the last frame
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        RawCaptureSource source = openCapture(file);
+
+        try {
+            assertEquals(frames.length - 1, source.getFrameCount());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void rejectsFilesWhichArentCaptures() throws IOException {
+        File file = tempDir.resolve("not-a-capture.eocvraw").toFile();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(new byte[64]);
+        }
+
+        RawCaptureSource source = new RawCaptureSource(file.getPath());
+
+        try {
+            assertFalse(source.init());
+        } finally {
+            source.close();
+        }
+    }
+
+}
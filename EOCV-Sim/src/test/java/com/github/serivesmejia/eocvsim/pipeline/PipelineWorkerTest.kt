@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.pipeline
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+class PipelineWorkerTest {
+
+    private val worker = PipelineWorker("Test")
+
+    @AfterEach
+    fun stopWorker() = worker.stop()
+
+    //a task which doesn't return until it's released or interrupted
+    private fun blockingTask(started: CountDownLatch, release: CountDownLatch) = Runnable {
+        started.countDown()
+
+        try {
+            release.await()
+        } catch(ignored: InterruptedException) { }
+    }
+
+    private fun awaitDeath(worker: PipelineWorker) {
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2)
+
+        while(worker.isAlive && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+        }
+
+        assertFalse(worker.isAlive, "The worker thread should have ended")
+    }
+
+    @Test
+    fun `runs tasks in the order they were submitted`() {
+        val order = Collections.synchronizedList(ArrayList<Int>())
+        worker.capacity = 10
+
+        for(i in 0 until 5) {
+            assertTrue(worker.submit(Runnable { order.add(i) }, 1000))
+        }
+
+        //run() waits for the tasks queued before its own
+        assertTrue(worker.run(Runnable { order.add(5) }, 1000))
+
+        assertEquals(listOf(0, 1, 2, 3, 4, 5), order)
+    }
+
+    @Test
+    fun `runs tasks in the worker thread`() {
+        var taskThread: Thread? = null
+
+        assertTrue(worker.run(Runnable { taskThread = Thread.currentThread() }, 1000))
+
+        assertNotNull(taskThread)
+        assertNotSame(Thread.currentThread(), taskThread)
+        assertEquals("Pipeline-Test", taskThread!!.name)
+    }
+
+    @Test
+    fun `run returns false when the task times out`() {
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+
+        val start = System.nanoTime()
+        assertFalse(worker.run(blockingTask(started, release), 100))
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100)
+        assertTrue(started.await(1, TimeUnit.SECONDS))
+
+        release.countDown()
+    }
+
+    @Test
+    fun `submit returns false when there's no room in time`() {
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+
+        worker.capacity = 1
+
+        assertTrue(worker.submit(blockingTask(started, release), 1000))
+        assertTrue(started.await(1, TimeUnit.SECONDS))
+
+        assertFalse(worker.submit(Runnable { }, 50))
+
+        //once the running task returns there's room again
+        release.countDown()
+        assertTrue(worker.submit(Runnable { }, 1000))
+    }
+
+    @Test
+    fun `an exception in a task doesn't end the worker`() {
+        assertTrue(worker.run(Runnable { throw IllegalStateException("Test exception") }, 1000))
+
+        val ran = AtomicBoolean(false)
+        assertTrue(worker.run(Runnable { ran.set(true) }, 1000))
+
+        assertTrue(ran.get())
+    }
+
+    @Test
+    fun `stop interrupts the running task and discards the queued ones`() {
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val queuedTaskRan = AtomicBoolean(false)
+
+        worker.capacity = 3
+
+        assertTrue(worker.submit(blockingTask(started, release), 1000))
+        assertTrue(worker.submit(Runnable { queuedTaskRan.set(true) }, 1000))
+        assertTrue(started.await(1, TimeUnit.SECONDS))
+
+        worker.stop()
+
+        assertTrue(worker.isStopped)
+        awaitDeath(worker)
+
+        assertFalse(queuedTaskRan.get())
+
+        //nothing is accepted once stopped
+        assertFalse(worker.submit(Runnable { }, 50))
+        assertFalse(worker.run(Runnable { }, 50))
+    }
+
+}
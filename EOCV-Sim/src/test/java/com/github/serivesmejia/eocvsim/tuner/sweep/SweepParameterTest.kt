@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.tuner.sweep
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+class SweepParameterTest {
+
+    @Test
+    fun `parses an inclusive range`() {
+        val parameter = SweepParameter.parse("threshold=0:3")
+
+        assertEquals("threshold", parameter.fieldName)
+        assertEquals(0, parameter.index)
+        assertEquals(listOf("0", "1", "2", "3"), parameter.values)
+    }
+
+    @Test
+    fun `parses a range with a step`() {
+        assertEquals(listOf("0", "5", "10"), SweepParameter.parse("threshold=0:10:5").values)
+        //the end is only included if a step lands on it
+        assertEquals(listOf("0", "4", "8"), SweepParameter.parse("threshold=0:10:4").values)
+    }
+
+    @Test
+    fun `parses a decreasing range`() {
+        assertEquals(listOf("10", "5", "0"), SweepParameter.parse("threshold=10:0:5").values)
+    }
+
+    @Test
+    fun `decimal steps don't accumulate rounding errors`() {
+        val values = SweepParameter.parse("ratio=0:1:0.1").values
+
+        assertEquals(11, values.size)
+        assertEquals("0.3", values[3])
+        assertEquals("0.7", values[7])
+        assertEquals("1", values.last())
+    }
+
+    @Test
+    fun `parses a list`() {
+        assertEquals(listOf("a", "b", "c"), SweepParameter.parse("mode = a, b ,c").values)
+        //empty items are skipped
+        assertEquals(listOf("1", "2"), SweepParameter.parse("mode=1,,2,").values)
+    }
+
+    @Test
+    fun `parses the field index`() {
+        val parameter = SweepParameter.parse("lower[2]=0:255:85")
+
+        assertEquals("lower", parameter.fieldName)
+        assertEquals(2, parameter.index)
+        assertEquals(listOf("0", "85", "170", "255"), parameter.values)
+
+        assertEquals("lower[2]", parameter.toString())
+        assertEquals("lower", SweepParameter.parse("lower[0]=1").toString())
+    }
+
+    @Test
+    fun `rejects invalid specs`() {
+        val invalidSpecs = listOf(
+            "threshold",          //no values
+            "=0:10",              //no name
+            "threshold=",         //empty values
+            "threshold=,",        //empty list
+            "threshold=0:abc",    //not a number
+            "threshold=0:10:2:1", //too many range parts
+            "threshold=0:10:0",   //zero step
+            "threshold=0:10:-1",  //negative step
+            "lower[a]=0:10",      //not an index
+            "lower]=0:10"         //no opening bracket
+        )
+
+        for(spec in invalidSpecs) {
+            assertThrows<IllegalArgumentException>("\"$spec\" should be rejected") {
+                SweepParameter.parse(spec)
+            }
+        }
+    }
+
+}
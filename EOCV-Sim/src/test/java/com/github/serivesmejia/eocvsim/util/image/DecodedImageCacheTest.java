@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.util.image;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DecodedImageCacheTest {
+
+    //10x10 single channel mats, 100 bytes each
+    private static final Size SIZE = new Size(10, 10);
+    private static final long MAT_BYTES = 100;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void loadNativeLib() {
+        OpenCV.loadLocally();
+    }
+
+    private static Mat matOf(int value) {
+        return new Mat(SIZE, CvType.CV_8UC1, new Scalar(value));
+    }
+
+    private static int valueOf(Mat mat) {
+        byte[] pixel = new byte[1];
+        mat.get(0, 0, pixel);
+
+        return pixel[0] & 0xFF;
+    }
+
+    private String imageFile(String name) throws IOException {
+        File file = tempDir.resolve(name).toFile();
+        Files.write(file.toPath(), new byte[] { 0 });
+
+        return file.getPath();
+    }
+
+    @Test
+    public void returnsTheCachedImage() throws IOException {
+        DecodedImageCache cache = new DecodedImageCache(10 * MAT_BYTES);
+        String path = imageFile("a.png");
+
+        cache.put(path, matOf(42));
+
+        Mat dst = new Mat();
+        assertTrue(cache.copyTo(path, SIZE, dst));
+
+        assertEquals(SIZE, dst.size());
+        assertEquals(42, valueOf(dst));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void storesACopyOfTheImage() throws IOException {
+        DecodedImageCache cache = new DecodedImageCache(10 * MAT_BYTES);
+        String path = imageFile("a.png");
+
+        Mat decoded = matOf(42);
+        cache.put(path, decoded);
+
+        //changing or releasing the original doesn't affect the cached one
+        decoded.setTo(new Scalar(7));
+        decoded.release();
+
+        Mat dst = new Mat();
+        assertTrue(cache.copyTo(path, SIZE, dst));
+        assertEquals(42, valueOf(dst));
+    }
+
+    @Test
+    public void missesOnAnotherSize() throws IOException {
+        DecodedImageCache cache = new DecodedImageCache(10 * MAT_BYTES);
+        String path = imageFile("a.png");
+
+        cache.put(path, matOf(42));
+
+        assertFalse(cache.copyTo(path, new Size(20, 20), new Mat()));
+        assertFalse(cache.copyTo(imageFile("b.png"), SIZE, new Mat()));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedImagesToFitTheBytes() throws IOException {
+        DecodedImageCache cache = new DecodedImageCache(2 * MAT_BYTES + MAT_BYTES / 2);
+
+        String a = imageFile("a.png");
+        String b = imageFile("b.png");
+        String c = imageFile("c.png");
+
+        cache.put(a, matOf(1));
+        cache.put(b, matOf(2));
+
+        //a is now more recently used than b
+        assertTrue(cache.copyTo(a, SIZE, new Mat()));
+
+        cache.put(c, matOf(3));
+
+        assertEquals(2 * MAT_BYTES, cache.getCurrentBytes());
+
+        assertFalse(cache.copyTo(b, SIZE, new Mat()));
+        assertTrue(cache.copyTo(a, SIZE, new Mat()));
+        assertTrue(cache.copyTo(c, SIZE, new Mat()));
+    }
+
+    @Test
+    public void replacingAnImageDoesntCountItTwice() throws IOException {
+        DecodedImageCache cache = new DecodedImageCache(10 * MAT_BYTES);
+        String path = imageFile("a.png");
+
+        cache.put(path, matOf(1));
+        cache.put(path, matOf(2));
+
+        assertEquals(MAT_BYTES, cache.getCurrentBytes());
+
+        Mat dst = new Mat();
+        assertTrue(cache.copyTo(path, SIZE, dst));
+        assertEquals(2, valueOf(dst));
+    }
+
+    @Test
+    public void skipsImagesBiggerThanTheCache() throws IOException {
+        DecodedImageCache cache = new DecodedImageCache(MAT_BYTES / 2);
+        String path = imageFile("a.png");
+
+        cache.put(path, matOf(1));
+
+        assertEquals(0, cache.getCurrentBytes());
+        assertFalse(cache.copyTo(path, SIZE, new Mat()));
+    }
+
+    @Test
+    public void missesOnceTheFileIsModified() throws IOException {
+        DecodedImageCache cache = new DecodedImageCache(10 * MAT_BYTES);
+        String path = imageFile("a.png");
+        File file = new File(path);
+
+        assertTrue(file.setLastModified(1_600_000_000_000L));
+        cache.put(path, matOf(1));
+
+        assertTrue(cache.copyTo(path, SIZE, new Mat()));
+
+        assertTrue(file.setLastModified(1_600_000_010_000L));
+        assertFalse(cache.copyTo(path, SIZE, new Mat()));
+
+        //the image decoded again is cached under the new modified time
+        cache.put(path, matOf(2));
+
+        Mat dst = new Mat();
+        assertTrue(cache.copyTo(path, SIZE, dst));
+        assertEquals(2, valueOf(dst));
+    }
+
+    @Test
+    public void clearReleasesEverything() throws IOException {
+        DecodedImageCache cache = new DecodedImageCache(10 * MAT_BYTES);
+        String path = imageFile("a.png");
+
+        cache.put(path, matOf(1));
+        cache.clear();
+
+        assertEquals(0, cache.getCurrentBytes());
+        assertFalse(cache.copyTo(path, SIZE, new Mat()));
+    }
+
+}
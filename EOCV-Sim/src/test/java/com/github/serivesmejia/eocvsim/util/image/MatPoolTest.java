@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.util.image;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MatPoolTest {
+
+    private static final int ROWS = 10;
+    private static final int COLS = 10;
+    private static final int TYPE = CvType.CV_8UC1;
+
+    @BeforeAll
+    public static void loadNativeLib() {
+        OpenCV.loadLocally();
+    }
+
+    private static MatPool.PooledMat take(MatPool pool) {
+        return pool.take(ROWS, COLS, TYPE);
+    }
+
+    @Test
+    public void takenMatsHaveTheRequestedGeometry() {
+        MatPool pool = new MatPool("Test", 2, MatPool.Policy.GROW);
+        MatPool.PooledMat mat = pool.take(20, 30, CvType.CV_8UC3);
+
+        assertEquals(20, mat.rows());
+        assertEquals(30, mat.cols());
+        assertEquals(CvType.CV_8UC3, mat.type());
+        assertTrue(mat.isCheckedOut());
+
+        assertEquals(20 * 30 * 3, pool.getNativeBytes());
+    }
+
+    @Test
+    public void reusesReturnedMats() {
+        MatPool pool = new MatPool("Test", 2, MatPool.Policy.GROW);
+
+        MatPool.PooledMat mat = take(pool);
+        mat.returnMat();
+
+        assertFalse(mat.isCheckedOut());
+        assertSame(mat, take(pool));
+
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    public void matsAreKeyedByGeometry() {
+        MatPool pool = new MatPool("Test", 2, MatPool.Policy.GROW);
+
+        MatPool.PooledMat mat = take(pool);
+        mat.returnMat();
+
+        assertNotSame(mat, pool.take(ROWS, COLS, CvType.CV_8UC3));
+        assertNotSame(mat, pool.take(ROWS * 2, COLS, TYPE));
+    }
+
+    @Test
+    public void matsAreReturnedUnderTheirCurrentGeometry() {
+        MatPool pool = new MatPool("Test", 2, MatPool.Policy.GROW);
+
+        MatPool.PooledMat mat = take(pool);
+        mat.create(ROWS * 2, COLS * 2, TYPE);
+        mat.returnMat();
+
+        assertSame(mat, pool.take(ROWS * 2, COLS * 2, TYPE));
+        assertEquals(ROWS * 2 * COLS * 2, pool.getNativeBytes());
+    }
+
+    @Test
+    public void growPolicyAllocatesPastTheCapAndReleasesTheExtraMats() {
+        MatPool pool = new MatPool("Test", 2, MatPool.Policy.GROW);
+
+        MatPool.PooledMat a = take(pool);
+        MatPool.PooledMat b = take(pool);
+        MatPool.PooledMat c = take(pool);
+
+        assertEquals(3, pool.getCheckedOutAmount());
+        assertEquals(3, pool.getMisses());
+
+        a.returnMat();
+        b.returnMat();
+        c.returnMat();
+
+        //only as many mats as the cap are kept, the first one returned was over it
+        assertTrue(a.empty());
+        assertEquals(2 * ROWS * COLS, pool.getNativeBytes());
+
+        take(pool);
+        take(pool);
+        assertEquals(2, pool.getHits());
+
+        take(pool);
+        assertEquals(4, pool.getMisses());
+    }
+
+    @Test
+    public void tryTakeDoesntGoPastTheCap() {
+        MatPool pool = new MatPool("Test", 1, MatPool.Policy.GROW);
+
+        MatPool.PooledMat mat = pool.tryTake(ROWS, COLS, TYPE);
+
+        assertNotNull(mat);
+        assertNull(pool.tryTake(ROWS, COLS, TYPE));
+
+        mat.returnMat();
+        assertSame(mat, pool.tryTake(ROWS, COLS, TYPE));
+    }
+
+    @Test
+    public void blockPolicyWaitsForAMatToBeReturned() throws Exception {
+        MatPool pool = new MatPool("Test", 1, MatPool.Policy.BLOCK);
+        MatPool.PooledMat mat = take(pool);
+
+        CompletableFuture<MatPool.PooledMat> blockedTake = CompletableFuture.supplyAsync(() -> take(pool));
+
+        assertThrows(TimeoutException.class, () -> blockedTake.get(200, TimeUnit.MILLISECONDS));
+
+        mat.returnMat();
+
+        assertSame(mat, blockedTake.get(2, TimeUnit.SECONDS));
+        assertEquals(1, pool.getCheckedOutAmount());
+    }
+
+    @Test
+    public void blockPolicyOnlyWaitsForTheSameKey() throws Exception {
+        MatPool pool = new MatPool("Test", 1, MatPool.Policy.BLOCK);
+        take(pool);
+
+        CompletableFuture<MatPool.PooledMat> otherKeyTake = CompletableFuture.supplyAsync(
+                () -> pool.take(ROWS, COLS, CvType.CV_8UC3)
+        );
+
+        assertNotNull(otherKeyTake.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void capsCanBeSetPerKey() {
+        MatPool pool = new MatPool("Test", 1, MatPool.Policy.BLOCK);
+        pool.setCap(ROWS, COLS, TYPE, 2);
+
+        assertEquals(2, pool.getCap(ROWS, COLS, TYPE));
+        assertEquals(1, pool.getCap(ROWS, COLS, CvType.CV_8UC3));
+
+        assertNotNull(pool.tryTake(ROWS, COLS, TYPE));
+        assertNotNull(pool.tryTake(ROWS, COLS, TYPE));
+        assertNull(pool.tryTake(ROWS, COLS, TYPE));
+
+        assertNotNull(pool.tryTake(ROWS, COLS, CvType.CV_8UC3));
+        assertNull(pool.tryTake(ROWS, COLS, CvType.CV_8UC3));
+    }
+
+    @Test
+    public void loweringACapReleasesThePooledMatsOverIt() {
+        MatPool pool = new MatPool("Test", 3, MatPool.Policy.GROW);
+
+        MatPool.PooledMat a = take(pool);
+        MatPool.PooledMat b = take(pool);
+        a.returnMat();
+        b.returnMat();
+
+        pool.setCap(ROWS, COLS, TYPE, 1);
+
+        assertEquals(ROWS * COLS, pool.getNativeBytes());
+        assertThrows(IllegalArgumentException.class, () -> pool.setCap(ROWS, COLS, TYPE, 0));
+    }
+
+    @Test
+    public void retainedMatsAreReturnedByTheLastHolder() {
+        MatPool pool = new MatPool("Test", 2, MatPool.Policy.GROW);
+
+        MatPool.PooledMat mat = take(pool);
+        assertSame(mat, mat.retain());
+
+        mat.returnMat();
+        assertTrue(mat.isCheckedOut());
+        assertEquals(1, pool.getCheckedOutAmount());
+
+        mat.returnMat();
+        assertFalse(mat.isCheckedOut());
+        assertEquals(0, pool.getCheckedOutAmount());
+
+        //returning it once more is only logged
+        assertDoesNotThrow(mat::returnMat);
+        assertThrows(IllegalStateException.class, mat::retain);
+    }
+
+    @Test
+    public void releaseAllOnlyReleasesThePooledMats() {
+        MatPool pool = new MatPool("Test", 2, MatPool.Policy.GROW);
+
+        MatPool.PooledMat pooled = take(pool);
+        MatPool.PooledMat checkedOut = take(pool);
+        pooled.returnMat();
+
+        pool.releaseAll();
+
+        assertTrue(pooled.empty());
+        assertFalse(checkedOut.empty());
+        assertEquals(ROWS * COLS, pool.getNativeBytes());
+
+        //still pooled once it's returned
+        checkedOut.returnMat();
+        assertSame(checkedOut, take(pool));
+    }
+
+    @Test
+    public void evictsIdleMats() throws InterruptedException {
+        MatPool pool = new MatPool("Test", 2, MatPool.Policy.GROW, 0);
+
+        MatPool.PooledMat mat = take(pool);
+        mat.returnMat();
+
+        Thread.sleep(1); //so that it was idle for longer than the timeout
+        pool.evictIdle();
+
+        assertTrue(mat.empty());
+        assertEquals(1, pool.getEvictions());
+        assertEquals(0, pool.getNativeBytes());
+    }
+
+}
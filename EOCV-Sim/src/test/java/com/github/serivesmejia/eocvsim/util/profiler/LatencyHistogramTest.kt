@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2021 Sebastian Erives
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.github.serivesmejia.eocvsim.util.profiler
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class LatencyHistogramTest {
+
+    //the buckets are linear inside each power of two, 16 sub buckets each
+    private val maxRelativeError = 1.0 / 16
+
+    private fun LatencyHistogram.recordMillis(millis: Long) = record(TimeUnit.MILLISECONDS.toNanos(millis))
+
+    private fun assertApprox(expected: Double, actual: Double) {
+        assertEquals(expected, actual, expected * maxRelativeError, "expected ~$expected but was $actual")
+    }
+
+    @Test
+    fun `empty histogram reports zero`() {
+        val histogram = LatencyHistogram()
+
+        assertEquals(0, histogram.count)
+        assertEquals(0.0, histogram.meanMillis)
+        assertEquals(0.0, histogram.maxMillis)
+        assertEquals(0.0, histogram.percentileMillis(50.0))
+    }
+
+    @Test
+    fun `percentiles of a uniform distribution`() {
+        val histogram = LatencyHistogram()
+
+        //recorded out of order on purpose
+        for(millis in 100L downTo 1L) {
+            histogram.recordMillis(millis)
+        }
+
+        assertEquals(100, histogram.count)
+        assertEquals(50.5, histogram.meanMillis, 1e-9)
+        assertEquals(100.0, histogram.maxMillis, 1e-9)
+
+        assertApprox(1.0, histogram.percentileMillis(1.0))
+        assertApprox(50.0, histogram.percentileMillis(50.0))
+        assertApprox(95.0, histogram.percentileMillis(95.0))
+        assertApprox(99.0, histogram.percentileMillis(99.0))
+    }
+
+    @Test
+    fun `percentiles never go above the max`() {
+        val histogram = LatencyHistogram()
+        histogram.recordMillis(100)
+
+        assertEquals(100.0, histogram.percentileMillis(50.0), 1e-9)
+        assertEquals(100.0, histogram.percentileMillis(100.0), 1e-9)
+    }
+
+    @Test
+    fun `small values are exact`() {
+        val histogram = LatencyHistogram()
+
+        for(micros in 1L..10L) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros))
+        }
+
+        assertEquals(0.005, histogram.percentileMillis(50.0), 1e-9)
+        assertEquals(0.010, histogram.percentileMillis(100.0), 1e-9)
+    }
+
+    @Test
+    fun `outliers only affect the top percentiles`() {
+        val histogram = LatencyHistogram()
+
+        repeat(990) { histogram.recordMillis(10) }
+        repeat(10) { histogram.recordMillis(1000) }
+
+        assertApprox(10.0, histogram.percentileMillis(50.0))
+        assertApprox(10.0, histogram.percentileMillis(99.0))
+        assertApprox(1000.0, histogram.percentileMillis(99.9))
+        assertEquals(1000.0, histogram.maxMillis, 1e-9)
+    }
+
+    @Test
+    fun `negative durations are recorded as zero`() {
+        val histogram = LatencyHistogram()
+        histogram.record(-5000)
+
+        assertEquals(1, histogram.count)
+        assertEquals(0.0, histogram.maxMillis)
+    }
+
+    @Test
+    fun `reset clears everything`() {
+        val histogram = LatencyHistogram()
+        histogram.recordMillis(20)
+        histogram.recordMillis(40)
+
+        histogram.reset()
+
+        assertEquals(0, histogram.count)
+        assertEquals(0.0, histogram.maxMillis)
+        assertEquals(0.0, histogram.percentileMillis(99.0))
+    }
+
+}